@@ -33,6 +33,7 @@ import org.apache.commons.compress.archivers.zip.UnixStat;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.karaf.tooling.utils.Instrumentation;
 import org.apache.karaf.tooling.utils.MojoSupport;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -112,7 +113,7 @@ public class ArchiveMojo extends MojoSupport {
     @Parameter
     private boolean useSymLinks = false;
 
-    public void execute() throws MojoExecutionException, MojoFailureException {
+    protected void executeGoal() throws MojoExecutionException, MojoFailureException {
         getLog().debug("Setting artifact file: " + targetFile);
         org.apache.maven.artifact.Artifact artifact = project.getArtifact();
         artifact.setFile(targetFile);
@@ -132,7 +133,11 @@ public class ArchiveMojo extends MojoSupport {
     @SuppressWarnings("deprecation")
 	private void archive(String type) throws IOException {
         Artifact artifact1 = factory.createArtifactWithClassifier(project.getArtifact().getGroupId(), project.getArtifact().getArtifactId(), project.getArtifact().getVersion(), type, "bin");
-        File target1 = archive(targetServerDirectory, destDir, artifact1);
+        File target1;
+        try (Instrumentation.Span span = Instrumentation.start(Instrumentation.Kind.ARCHIVE_WRITE, artifact1.toString())) {
+            target1 = archive(targetServerDirectory, destDir, artifact1);
+            span.setSize(target1.length());
+        }
 
         // artifact1 is created with explicit classifier "bin", which is dropped below when attachArtifact is called
         // which means we can't use artifact1.equals(artifact) directly with artifact1
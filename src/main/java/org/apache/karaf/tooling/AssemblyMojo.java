@@ -30,6 +30,7 @@ import java.util.Map;
 
 import org.apache.karaf.profile.assembly.Builder;
 import org.apache.karaf.tooling.utils.IoUtils;
+import org.apache.karaf.tooling.utils.Instrumentation;
 import org.apache.karaf.tooling.utils.MavenUtil;
 import org.apache.karaf.tooling.utils.MojoSupport;
 import org.apache.karaf.tools.utils.model.KarafPropertyEdits;
@@ -232,7 +233,7 @@ public class AssemblyMojo extends MojoSupport {
     protected String propertyFileEdits;
 
     @Override
-    public void execute() throws MojoExecutionException, MojoFailureException {
+    protected void executeGoal() throws MojoExecutionException, MojoFailureException {
         try {
             doExecute();
         }
@@ -290,10 +291,49 @@ public class AssemblyMojo extends MojoSupport {
         }
         getLog().info("Using repositories: " + remote.toString());
 
+        Builder builder;
+        try (Instrumentation.Span span = Instrumentation.start("configure assembly")) {
+            builder = configureBuilder(remote.toString());
+        }
+
+        // Generate the assembly
+        try (Instrumentation.Span span = Instrumentation.start("generate assembly")) {
+            builder.generateAssembly();
+        }
+
+        try (Instrumentation.Span span = Instrumentation.start("copy assembly resources")) {
+            // Include project classes content
+            if (includeBuildOutputDirectory)
+                IoUtils.copyDirectory(new File(project.getBuild().getOutputDirectory()), workDirectory);
+
+            // Overwrite assembly dir contents
+            if (sourceDirectory.exists())
+                IoUtils.copyDirectory(sourceDirectory, workDirectory);
+
+            // Chmod the bin/* scripts
+            File[] files = new File(workDirectory, "bin").listFiles();
+            if( files!=null ) {
+                for (File file : files) {
+                    if( !file.getName().endsWith(".bat") ) {
+                        try {
+                            Files.setPosixFilePermissions(file.toPath(), PosixFilePermissions.fromString("rwxr-xr-x"));
+                        } catch (Throwable ignore) {
+                            // we tried our best, perhaps the OS does not support posix file perms.
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Create the builder of the assembly from the goal configuration.
+     */
+    private Builder configureBuilder(String remote) throws Exception {
         Builder builder = Builder.newInstance();
         builder.offline(mavenSession.isOffline());
         builder.localRepository(localRepo.getBasedir());
-        builder.mavenRepositories(remote.toString());
+        builder.mavenRepositories(remote);
         builder.javase(javase);
 
         // Set up blacklisted items
@@ -396,31 +436,7 @@ public class AssemblyMojo extends MojoSupport {
                 .features(toArray(installedFeatures))
                 .bundles(toArray(installedBundles))
                 .profiles(toArray(installedProfiles));
-
-        // Generate the assembly
-        builder.generateAssembly();
-
-        // Include project classes content
-        if (includeBuildOutputDirectory)
-            IoUtils.copyDirectory(new File(project.getBuild().getOutputDirectory()), workDirectory);
-
-        // Overwrite assembly dir contents
-        if (sourceDirectory.exists())
-            IoUtils.copyDirectory(sourceDirectory, workDirectory);
-
-        // Chmod the bin/* scripts
-        File[] files = new File(workDirectory, "bin").listFiles();
-        if( files!=null ) {
-            for (File file : files) {
-                if( !file.getName().endsWith(".bat") ) {
-                    try {
-                        Files.setPosixFilePermissions(file.toPath(), PosixFilePermissions.fromString("rwxr-xr-x"));
-                    } catch (Throwable ignore) {
-                        // we tried our best, perhaps the OS does not support posix file perms.
-                    }
-                }
-            }
-        }
+        return builder;
     }
 
     private Object invoke(Object object, String getter) throws MojoExecutionException {
@@ -24,6 +24,7 @@ import org.apache.karaf.features.ConfigFileInfo;
 import org.apache.karaf.features.internal.model.Feature;
 import org.apache.karaf.features.internal.model.Features;
 import org.apache.karaf.features.internal.model.JaxbUtil;
+import org.apache.karaf.tooling.utils.Instrumentation;
 import org.apache.karaf.tooling.utils.MavenUtil;
 import org.apache.karaf.tooling.utils.MojoSupport;
 import org.apache.maven.archiver.MavenArchiveConfiguration;
@@ -126,7 +127,7 @@ public class KarMojo extends MojoSupport {
     // Mojo
     //
 
-    public void execute() throws MojoExecutionException, MojoFailureException {
+    protected void executeGoal() throws MojoExecutionException, MojoFailureException {
         File featuresFileResolved = resolveFile(featuresFile);
         String groupId = project.getGroupId();
         String artifactId = project.getArtifactId();
@@ -199,7 +200,11 @@ public class KarMojo extends MojoSupport {
     private List<Artifact> readResources(File featuresFile) throws MojoExecutionException {
         List<Artifact> resources = new ArrayList<Artifact>();
         try {
-            Features features = JaxbUtil.unmarshal(featuresFile.toURI().toASCIIString(), false);
+            Features features;
+            try (Instrumentation.Span span = Instrumentation.start(Instrumentation.Kind.DESCRIPTOR_PARSING, featuresFile.getPath())) {
+                features = JaxbUtil.unmarshal(featuresFile.toURI().toASCIIString(), false);
+                span.setSize(features.getFeature().size());
+            }
             for (Feature feature : features.getFeature()) {
                 for (BundleInfo bundle : feature.getBundles()) {
                     if (ignoreDependencyFlag || (!ignoreDependencyFlag && !bundle.isDependency())) {
@@ -329,7 +334,10 @@ public class KarMojo extends MojoSupport {
             if (resourcesDir.isDirectory()) {
                 archiver.getArchiver().addDirectory(resourcesDir);
             }
-            archiver.createArchive(project, archive);
+            try (Instrumentation.Span span = Instrumentation.start(Instrumentation.Kind.ARCHIVE_WRITE, archiveFile.getName())) {
+                archiver.createArchive(project, archive);
+                span.setSize(archiveFile.length());
+            }
 
             return archiveFile;
         } catch (Exception e) {
@@ -18,44 +18,58 @@
  */
 package org.apache.karaf.tooling;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
 import java.net.URL;
+import java.security.cert.X509Certificate;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Dictionary;
 import java.util.EnumSet;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.jar.Attributes;
-import java.util.jar.Manifest;
 import java.util.regex.Pattern;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
 
 import aQute.bnd.osgi.Macro;
 import aQute.bnd.osgi.Processor;
 import org.apache.felix.resolver.Logger;
 import org.apache.felix.resolver.ResolverImpl;
+import org.apache.felix.utils.manifest.Clause;
 import org.apache.felix.utils.version.VersionRange;
 import org.apache.felix.utils.version.VersionTable;
 import org.apache.karaf.features.FeatureEvent;
@@ -66,6 +80,7 @@ import org.apache.karaf.features.internal.download.Downloader;
 import org.apache.karaf.features.internal.download.StreamProvider;
 import org.apache.karaf.features.internal.model.Conditional;
 import org.apache.karaf.features.internal.model.ConfigFile;
+import org.apache.karaf.features.internal.model.Dependency;
 import org.apache.karaf.features.internal.model.Feature;
 import org.apache.karaf.features.internal.model.Features;
 import org.apache.karaf.features.internal.model.JaxbUtil;
@@ -76,26 +91,47 @@ import org.apache.karaf.features.internal.service.Deployer;
 import org.apache.karaf.features.internal.service.State;
 import org.apache.karaf.features.internal.util.MapUtils;
 import org.apache.karaf.features.internal.util.MultiException;
-import org.apache.karaf.profile.assembly.CustomDownloadManager;
+import org.apache.karaf.tooling.utils.BufferedLog;
+import org.apache.karaf.tooling.utils.DependencyHelperFactory;
+import org.apache.karaf.tooling.utils.Instrumentation;
+import org.apache.karaf.tooling.utils.ManifestCache;
+import org.apache.karaf.tooling.utils.ManifestReader;
+import org.apache.karaf.tooling.utils.ManifestUtils;
 import org.apache.karaf.tooling.utils.MojoSupport;
+import org.apache.karaf.tooling.verify.Bisection;
+import org.apache.karaf.tooling.verify.CapabilityIndex;
+import org.apache.karaf.tooling.verify.FeatureFingerprints;
+import org.apache.karaf.tooling.verify.PackageIndex;
+import org.apache.karaf.tooling.verify.ResolutionHistory;
+import org.apache.karaf.tooling.verify.ResolverProfile;
+import org.apache.karaf.tooling.verify.SharedDownloadManager;
+import org.apache.karaf.tooling.verify.TimingDownloadManager;
+import org.apache.karaf.tooling.verify.TimingResolver;
+import org.apache.karaf.tooling.verify.VerificationReport;
+import org.apache.karaf.tooling.verify.VerificationTarget;
 import org.apache.karaf.util.config.PropertiesLoader;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.settings.Settings;
+import org.codehaus.plexus.util.StringUtils;
 import org.ops4j.pax.url.mvn.MavenResolver;
 import org.ops4j.pax.url.mvn.MavenResolvers;
 import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
 import org.osgi.framework.BundleException;
 import org.osgi.framework.Constants;
 import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceReference;
 import org.osgi.framework.Version;
 import org.osgi.framework.namespace.IdentityNamespace;
+import org.osgi.framework.namespace.PackageNamespace;
 import org.osgi.framework.startlevel.BundleStartLevel;
 import org.osgi.framework.wiring.BundleCapability;
 import org.osgi.framework.wiring.BundleRequirement;
@@ -105,8 +141,7 @@ import org.osgi.resource.Requirement;
 import org.osgi.resource.Resource;
 import org.osgi.resource.Wire;
 import org.osgi.service.resolver.ResolutionException;
-
-import static java.util.jar.JarFile.MANIFEST_NAME;
+import org.osgi.service.resolver.Resolver;
 
 @Mojo(name = "verify", requiresDependencyResolution = ResolutionScope.COMPILE_PLUS_RUNTIME, threadSafe = true)
 public class VerifyMojo extends MojoSupport {
@@ -144,13 +179,209 @@ public class VerifyMojo extends MojoSupport {
     @Parameter(property = "verify-transitive")
     protected boolean verifyTransitive = false;
 
+    /**
+     * Targets to verify the features against in a single run, each one with its own <code>name</code>,
+     * <code>javase</code>, <code>framework</code>, <code>distribution</code> and <code>configuration</code>.
+     * Descriptors, downloads and parsed manifests are shared between targets.  When not set, the features are
+     * only verified against the goal configuration.
+     */
+    @Parameter
+    protected List<VerificationTarget> targets;
+
+    /**
+     * Number of features verified concurrently.
+     */
+    @Parameter(property = "threads", defaultValue = "1")
+    protected int threads = 1;
+
+    /**
+     * Number of threads shared by the resolutions which run the resolver in parallel, <code>0</code> to use the
+     * number of available processors, <code>1</code> to always resolve sequentially.  The pool is shared by all
+     * the concurrently verified features, and <code>parallel-resolution-threshold</code> decides which of their
+     * resolutions use it.
+     */
+    @Parameter(property = "resolver-threads", defaultValue = "0")
+    protected int resolverThreads;
+
+    /**
+     * Minimum number of bundles reachable from a feature for its resolutions to use the shared resolver threads.
+     * Smaller features are resolved sequentially, leaving the cores to the concurrently verified features.
+     */
+    @Parameter(property = "parallel-resolution-threshold", defaultValue = "200")
+    protected int parallelResolutionThreshold = 200;
+
+    /**
+     * Verify all the conditionals of a feature in a single resolution, and only verify them separately, by
+     * recursive bisection, when this combined resolution fails.  Conditionals which fail when installed together
+     * are reported as a single failure.  Conditionals which only resolve when installed together with another
+     * conditional are not detected in this mode.
+     */
+    @Parameter(property = "batch-conditionals", defaultValue = "false")
+    protected boolean batchConditionals;
+
+    /**
+     * Check the mandatory package imports of the bundles of each feature against the packages exported by the
+     * framework and by the features it may depend on before resolving it, so that missing packages are reported
+     * without running the resolver.  The check is disabled when features declare package capabilities.  Packages
+     * only provided by resource repositories or by bundles pulled in through requirements are not known to the
+     * check, which then reports failures the resolver would not, so it is only suitable for self-contained
+     * features.
+     */
+    @Parameter(property = "precheck", defaultValue = "false")
+    protected boolean precheck;
+
+    /**
+     * Report the bundles of each feature which no other bundle is wired to once the feature is resolved.  Such
+     * bundles are candidates for removal, unless they are used at runtime without being wired to, such as
+     * applications or extenders.  Fragments are never reported.
+     */
+    @Parameter(property = "detect-unused", defaultValue = "false")
+    protected boolean detectUnused;
+
+    /**
+     * File receiving a copy of the verified features without the bundles reported as unused in all targets.
+     * Setting it enables <code>detectUnused</code>.
+     */
+    @Parameter(property = "pruned-descriptor")
+    protected File prunedDescriptor;
+
+    /**
+     * File used to persist the manifest headers of the verified bundles between builds.
+     */
+    @Parameter(property = "manifest-cache", defaultValue = "${project.build.directory}/karaf-verify/manifest.cache")
+    protected File manifestCacheFile;
+
+    /**
+     * Maximum number of bundles kept in the manifest cache, <code>0</code> to disable the cache.
+     */
+    @Parameter(property = "manifest-cache-size", defaultValue = "10000")
+    protected int manifestCacheSize = 10000;
+
+    /**
+     * Whether manifest cache entries record the SHA-1 of the bundle, so that an entry whose bundle has the same
+     * size but a new last modification time is revalidated against it instead of being read again.
+     */
+    @Parameter(property = "manifest-cache-hash", defaultValue = "false")
+    protected boolean manifestCacheHash;
+
+    /**
+     * File used to persist the capabilities and requirements of the verified bundles between builds.
+     * The index is only kept in memory if not set.
+     */
+    @Parameter(property = "capability-index")
+    protected File capabilityIndexFile;
+
+    /**
+     * Skip the verification of features which have been successfully verified by a previous build with the
+     * same definition, bundles and configuration.
+     */
+    @Parameter(property = "incremental", defaultValue = "false")
+    protected boolean incremental;
+
+    /**
+     * Directory holding the fingerprints of verified features when <code>incremental</code> is enabled.
+     * It may be shared between builds.
+     */
+    @Parameter(property = "fingerprint-dir", defaultValue = "${project.build.directory}/karaf-verify/fingerprints")
+    protected File fingerprintDirectory;
+
+    /**
+     * File receiving a machine readable report of the verification, with the outcome and timings of each
+     * feature and conditional.  No report is written if not set.
+     */
+    @Parameter(property = "report")
+    protected File reportFile;
+
+    /**
+     * Format of the verification report, either <code>json</code> or <code>xml</code>.
+     */
+    @Parameter(property = "report-format", defaultValue = "json")
+    protected String reportFormat = "json";
+
+    /**
+     * Record the work done by the resolver for each feature, and rank the packages and bundles causing the most
+     * of it.
+     */
+    @Parameter(property = "profile", defaultValue = "false")
+    protected boolean profile;
+
+    /**
+     * File receiving the resolver profile when <code>profile</code> is enabled.
+     */
+    @Parameter(property = "profile-file", defaultValue = "${project.build.directory}/karaf-verify/resolver-profile.json")
+    protected File profileFile;
+
+    /**
+     * File holding the history of the resolution time and number of resources of each verified feature.  When
+     * set, each successful verification is compared with the median of its previous ones, and a regression is
+     * reported if it grew by more than <code>regressionThreshold</code> percent.
+     */
+    @Parameter(property = "history")
+    protected File historyFile;
+
+    /**
+     * Number of verifications kept in the history for each feature and conditional.
+     */
+    @Parameter(property = "history-size", defaultValue = "10")
+    protected int historySize = 10;
+
+    /**
+     * Allowed growth, in percent, of the resolution time or number of resources over the history baseline.
+     */
+    @Parameter(property = "regression-threshold", defaultValue = "50")
+    protected int regressionThreshold = 50;
+
+    /**
+     * Baseline resolution time, in milliseconds, under which resolution times are not compared, as they are
+     * mostly noise.
+     */
+    @Parameter(property = "regression-min-time", defaultValue = "100")
+    protected long regressionMinTime = 100;
+
+    /**
+     * Fail the build on a regression instead of logging a warning.  Regressions are not added to the history in
+     * this mode, so that they keep failing until fixed.
+     */
+    @Parameter(property = "fail-on-regression", defaultValue = "false")
+    protected boolean failOnRegression;
+
+    /**
+     * Download all the bundles and configuration files of the verified features, of the features they may depend on
+     * and of the framework features before starting the resolutions.  This may download bundles which the
+     * resolutions would not need.
+     */
+    @Parameter(property = "prefetch", defaultValue = "false")
+    protected boolean prefetch;
+
+    /**
+     * Maximum number of concurrent downloads.
+     */
+    @Parameter(property = "download-threads", defaultValue = "8")
+    protected int downloadThreads = 8;
+
+    /**
+     * Resolve <code>mvn:</code> urls through the repository system of the Maven session, so that reactor artifacts
+     * and artifacts already resolved by the build are used directly.  Artifacts it can not resolve are still
+     * resolved using the repositories of the project.
+     */
+    @Parameter(property = "session-resolver", defaultValue = "false")
+    protected boolean sessionResolver;
+
     @Parameter(defaultValue = "${project}", readonly = true)
     protected MavenProject project;
 
     protected MavenResolver resolver;
 
+    protected ResolverProfile resolverProfile;
+
+    protected ExecutorService resolverExecutor;
+
+    protected boolean packagePrecheck;
+
+    protected Map<String, Set<String>> unusedBundles;
+
     @Override
-    public void execute() throws MojoExecutionException, MojoFailureException {
+    protected void executeGoal() throws MojoExecutionException, MojoFailureException {
         Hashtable<String, String> config = new Hashtable<>();
         StringBuilder remote = new StringBuilder();
         for (Object obj : project.getRemoteProjectRepositories()) {
@@ -199,7 +430,7 @@ public class VerifyMojo extends MojoSupport {
         System.setProperty("karaf.home", "target/karaf");
         System.setProperty("karaf.data", "target/karaf/data");
 
-        Hashtable<String, String> properties = new Hashtable<>();
+        final Hashtable<String, String> properties = new Hashtable<>();
 
         if (additionalMetadata != null) {
             try (Reader reader = new FileReader(additionalMetadata)) {
@@ -216,11 +447,12 @@ public class VerifyMojo extends MojoSupport {
         }
 
         // TODO: allow using external configuration ?
-        ScheduledExecutorService executor = Executors.newScheduledThreadPool(8);
-        DownloadManager manager = new CustomDownloadManager(resolver, executor);
+        final ScheduledExecutorService executor = Executors.newScheduledThreadPool(Math.max(1, downloadThreads));
+        final SharedDownloadManager manager = new SharedDownloadManager(resolver, executor,
+                sessionResolver ? DependencyHelperFactory.createDependencyHelper(container, project, mavenSession, getLog()) : null, getLog());
         final Map<String, Features> repositories;
         Map<String, List<Feature>> allFeatures = new HashMap<>();
-        try {
+        try (Instrumentation.Span span = Instrumentation.start("load features repositories")) {
             repositories = loadRepositories(manager, descriptors);
             for (String repoUri : repositories.keySet()) {
                 List<Feature> features = repositories.get(repoUri).getFeature();
@@ -282,85 +514,862 @@ public class VerifyMojo extends MojoSupport {
             }
         }
 
-        for (String fmk : framework) {
-            properties.put("feature.framework." + fmk, fmk);
+        Map<String, List<Feature>> featuresByName = getFeaturesByName(repositories);
+        if (prefetch) {
+            try (Instrumentation.Span span = Instrumentation.start("prefetch artifacts")) {
+                prefetch(featuresToTest, manager, featuresByName);
+            }
+        }
+
+        ManifestCache manifestCache = null;
+        if (manifestCacheSize > 0) {
+            manifestCache = new ManifestCache(manifestCacheFile, manifestCacheSize, manifestCacheHash);
+            manifestCache.load();
         }
+        CapabilityIndex capabilityIndex = new CapabilityIndex(capabilityIndexFile);
+        capabilityIndex.load();
+        VerificationReport report = new VerificationReport();
         List<Exception> failures = new ArrayList<>();
-        for (Feature feature : featuresToTest) {
+        packagePrecheck = precheck && !hasPackageCapabilities(repositories);
+        unusedBundles = detectUnused || prunedDescriptor != null ? new HashMap<String, Set<String>>() : null;
+        resolverProfile = profile ? new ResolverProfile() : null;
+        int nbResolverThreads = resolverThreads > 0 ? resolverThreads : Runtime.getRuntime().availableProcessors();
+        resolverExecutor = nbResolverThreads > 1 ? Executors.newFixedThreadPool(nbResolverThreads) : null;
+        try {
+            for (VerificationTarget target : getTargets()) {
+                failures.addAll(verifyTarget(target, featuresToTest, manager, repositories, featuresByName, properties,
+                        manifestCache, capabilityIndex, report));
+            }
+        } finally {
+            if (resolverExecutor != null) {
+                resolverExecutor.shutdownNow();
+            }
+            writeReport(report);
+            writePrunedDescriptor(featuresToTest);
+            if (resolverProfile != null) {
+                resolverProfile.log(getLog(), 10);
+                try {
+                    resolverProfile.write(profileFile);
+                } catch (IOException e) {
+                    getLog().warn("Unable to write resolver profile to " + profileFile, e);
+                }
+            }
+            getLog().debug("Capability index: " + capabilityIndex.getHits() + " hits, " + capabilityIndex.getMisses() + " misses");
             try {
-                String id = feature.getName() + "/" + feature.getVersion();
-                verifyResolution(new CustomDownloadManager(resolver, executor),
-                                 repositories, Collections.singleton(id), properties);
-                getLog().info("Verification of feature " + id + " succeeded");
-            } catch (Exception e) {
-                if (e.getCause() instanceof ResolutionException) {
-                    getLog().warn(e.getMessage());
-                } else {
-                    getLog().warn(e);
+                capabilityIndex.save();
+            } catch (IOException e) {
+                getLog().warn("Unable to save capability index to " + capabilityIndexFile, e);
+            }
+            if (manifestCache != null) {
+                getLog().debug("Manifest cache: " + manifestCache.getHits() + " hits, " + manifestCache.getMisses() + " misses");
+                try {
+                    manifestCache.save();
+                } catch (IOException e) {
+                    getLog().warn("Unable to save manifest cache to " + manifestCacheFile, e);
                 }
-                failures.add(e);
-                if ("first".equals(fail)) {
-                    throw e;
+            }
+        }
+        List<String> regressions = checkHistory(report);
+        if ("end".equals(fail) && !failures.isEmpty()) {
+            throw new MojoExecutionException("Verification failures", new MultiException("Verification failures", failures));
+        }
+        if (failOnRegression && !regressions.isEmpty()) {
+            throw new MojoFailureException("Resolution regressions:\n  " + StringUtils.join(regressions.toArray(), "\n  "));
+        }
+    }
+
+    private List<String> checkHistory(VerificationReport report) {
+        if (historyFile == null) {
+            return Collections.emptyList();
+        }
+        ResolutionHistory history = new ResolutionHistory(historyFile, historySize, regressionThreshold, regressionMinTime);
+        try {
+            history.load();
+        } catch (IOException e) {
+            getLog().warn("Unable to load resolution history from " + historyFile, e);
+        }
+        List<String> regressions = history.check(report.getEntries(), !failOnRegression);
+        for (String regression : regressions) {
+            if (failOnRegression) {
+                getLog().error("Regression: " + regression);
+            } else {
+                getLog().warn("Regression: " + regression);
+            }
+        }
+        try {
+            history.save();
+        } catch (IOException e) {
+            getLog().warn("Unable to save resolution history to " + historyFile, e);
+        }
+        return regressions;
+    }
+
+    /**
+     * Download the bundles and configuration files of the given features, of the features they may depend on and
+     * of the framework features of all targets, and the conditional bundles of the given features, so that the
+     * resolutions do not wait for them.  Download failures are left to the verification to report.
+     */
+    private void prefetch(List<Feature> featuresToTest, SharedDownloadManager manager, Map<String, List<Feature>> featuresByName) {
+        List<Feature> roots = new ArrayList<>(featuresToTest);
+        for (VerificationTarget target : getTargets()) {
+            for (String fmk : target.getFramework()) {
+                List<Feature> named = featuresByName.get(fmk.split("/")[0]);
+                if (named != null) {
+                    roots.addAll(named);
                 }
             }
+        }
+        Map<String, Feature> closure = new HashMap<>();
+        for (Feature root : roots) {
+            if (!closure.containsKey(root.getId())) {
+                for (Feature feature : getClosure(root, featuresByName)) {
+                    closure.put(feature.getId(), feature);
+                }
+            }
+        }
+        Set<String> locations = new TreeSet<>();
+        for (Feature feature : closure.values()) {
+            for (org.apache.karaf.features.internal.model.Bundle bi : feature.getBundle()) {
+                locations.add(bi.getLocation().trim());
+            }
+            for (ConfigFile cfi : feature.getConfigfile()) {
+                locations.add(cfi.getLocation().trim());
+            }
+        }
+        // Only the conditionals of the verified features are always resolved
+        for (Feature feature : featuresToTest) {
             for (Conditional cond : feature.getConditional()) {
-                Set<String> ids = new LinkedHashSet<>();
-                ids.add(feature.getId());
-                ids.addAll(cond.getCondition());
-                try {
-                    verifyResolution(manager, repositories, ids, properties);
-                    getLog().info("Verification of feature " + ids + " succeeded");
-                } catch (Exception e) {
-                    if (ignoreMissingConditions && e.getCause() instanceof ResolutionException) {
-                        boolean ignore = true;
-                        Collection<Requirement> requirements = ((ResolutionException) e.getCause()).getUnresolvedRequirements();
-                        for (Requirement req : requirements) {
-                            ignore &= (IdentityNamespace.IDENTITY_NAMESPACE.equals(req.getNamespace())
-                                    && ResourceUtils.TYPE_FEATURE.equals(req.getAttributes().get("type"))
-                                    && cond.getCondition().contains(req.getAttributes().get(IdentityNamespace.IDENTITY_NAMESPACE).toString()));
-                        }
-                        if (ignore) {
-                            getLog().warn("Feature resolution failed for " + ids
-                                    + "\nMessage: " + e.getCause().getMessage());
-                            continue;
+                for (org.apache.karaf.features.internal.model.Bundle bi : cond.getBundle()) {
+                    locations.add(bi.getLocation().trim());
+                }
+            }
+        }
+
+        final int total = locations.size();
+        final int step = Math.max(1, total / 10);
+        final AtomicInteger downloaded = new AtomicInteger();
+        getLog().info("Prefetching " + total + " artifacts");
+        long start = System.currentTimeMillis();
+        Downloader downloader = manager.createDownloader();
+        for (String location : locations) {
+            downloader.download(location, new DownloadCallback() {
+                @Override
+                public void downloaded(StreamProvider provider) throws Exception {
+                    int count = downloaded.incrementAndGet();
+                    if (count % step == 0 || count == total) {
+                        getLog().info("Prefetched " + count + "/" + total + " artifacts");
+                    }
+                }
+            });
+        }
+        try {
+            downloader.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            getLog().warn("Unable to prefetch " + (total - downloaded.get()) + " artifacts");
+            getLog().debug(e);
+        }
+        getLog().info("Prefetched " + downloaded.get() + "/" + total + " artifacts in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Get the targets to verify, with their unset values defaulting to the goal configuration.
+     */
+    private List<VerificationTarget> getTargets() {
+        List<VerificationTarget> result = new ArrayList<>();
+        if (targets == null || targets.isEmpty()) {
+            result.add(createTarget(null, javase, framework, distribution, configuration));
+        } else {
+            for (VerificationTarget target : targets) {
+                String name = target.getName() != null ? target.getName() : "target-" + (result.size() + 1);
+                result.add(createTarget(name,
+                        target.getJavase() != null ? target.getJavase() : javase,
+                        target.getFramework() != null ? target.getFramework() : framework,
+                        target.getDistribution() != null ? target.getDistribution() : distribution,
+                        target.getConfiguration() != null ? target.getConfiguration() : configuration));
+            }
+        }
+        return result;
+    }
+
+    private static VerificationTarget createTarget(String name, String javase, Set<String> framework, String distribution, String configuration) {
+        VerificationTarget target = new VerificationTarget();
+        target.setName(name);
+        target.setJavase(javase);
+        target.setFramework(framework);
+        target.setDistribution(distribution);
+        target.setConfiguration(configuration);
+        return target;
+    }
+
+    /**
+     * Verify the features against the given target.
+     *
+     * @return the verification failures
+     */
+    private List<Exception> verifyTarget(VerificationTarget target, List<Feature> featuresToTest,
+                                         SharedDownloadManager manager, Map<String, Features> repositories,
+                                         Map<String, List<Feature>> featuresByName, Hashtable<String, String> properties,
+                                         ManifestCache manifestCache, CapabilityIndex capabilityIndex,
+                                         VerificationReport report) throws MojoExecutionException, MojoFailureException {
+        if (target.getName() != null) {
+            getLog().info("Verifying features against target " + target.getName());
+        }
+
+        Hashtable<String, String> targetProperties = new Hashtable<>(properties);
+        for (String fmk : target.getFramework()) {
+            targetProperties.put("feature.framework." + fmk, fmk);
+        }
+        FeatureFingerprints fingerprints = null;
+        if (incremental) {
+            File directory = target.getName() != null
+                    ? new File(fingerprintDirectory, target.getName().replaceAll("[^A-Za-z0-9._-]", "_"))
+                    : fingerprintDirectory;
+            fingerprints = new FeatureFingerprints(directory, getFingerprintContext(targetProperties, target), manager);
+        }
+        DummyDeployCallback frameworkSnapshot;
+        try (Instrumentation.Span span = Instrumentation.start("resolve framework")) {
+            frameworkSnapshot = resolveFramework(manager, repositories, targetProperties, manifestCache, capabilityIndex, target);
+        }
+        return verifyFeatures(featuresToTest, manager, repositories, featuresByName, frameworkSnapshot, fingerprints, report, target);
+    }
+
+    /**
+     * @return the verification failures
+     */
+    private List<Exception> verifyFeatures(List<Feature> featuresToTest, final SharedDownloadManager manager,
+                                           final Map<String, Features> repositories, final Map<String, List<Feature>> featuresByName,
+                                           final DummyDeployCallback frameworkSnapshot, final FeatureFingerprints fingerprints,
+                                           VerificationReport report, final VerificationTarget target) throws MojoExecutionException {
+
+        List<Exception> failures = new ArrayList<>();
+        final AtomicBoolean aborted = new AtomicBoolean();
+        ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, threads));
+        final int[] sizes = new int[featuresToTest.size()];
+        List<Integer> scheduled = new ArrayList<>();
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = getBundleCount(getClosure(featuresToTest.get(i), featuresByName));
+            scheduled.add(i);
+        }
+        // Start with the largest features, so that they do not end up running alone at the end of the run,
+        // unless the first failure in the order of the features has to be reported
+        if (!"first".equals(fail)) {
+            Collections.sort(scheduled, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer i1, Integer i2) {
+                    return Integer.compare(sizes[i2], sizes[i1]);
+                }
+            });
+        }
+        Map<Integer, Future<FeatureVerification>> futures = new HashMap<>();
+        try {
+            for (int index : scheduled) {
+                final Feature feature = featuresToTest.get(index);
+                final Executor executor = resolverExecutor != null && sizes[index] >= parallelResolutionThreshold
+                        ? resolverExecutor : null;
+                futures.put(index, workers.submit(new Callable<FeatureVerification>() {
+                    @Override
+                    public FeatureVerification call() throws Exception {
+                        FeatureVerification verification = new FeatureVerification(new BufferedLog(getLog()), executor, target.getFramework(), fingerprints);
+                        if (!aborted.get()) {
+                            try (Instrumentation.Span span = Instrumentation.start("verify feature " + feature.getId())) {
+                                verifyFeature(feature, manager, repositories, featuresByName, frameworkSnapshot, verification, aborted);
+                            }
                         }
+                        return verification;
                     }
-                    if (e.getCause() instanceof ResolutionException) {
-                        getLog().warn(e.getMessage());
+                }));
+            }
+            List<Future<FeatureVerification>> verifications = new ArrayList<>();
+            for (int i = 0; i < sizes.length; i++) {
+                verifications.add(futures.get(i));
+            }
+            // Collect results in the order of the features so that the output does not depend on scheduling
+            for (int i = 0; i < verifications.size(); i++) {
+                FeatureVerification verification;
+                try {
+                    verification = verifications.get(i).get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new MojoExecutionException("Verification interrupted", e);
+                } catch (ExecutionException e) {
+                    throw new MojoExecutionException("Error verifying features", e.getCause());
+                }
+                verification.log.flush(getLog());
+                failures.addAll(verification.failures);
+                for (VerificationReport.Entry entry : verification.entries) {
+                    entry.setTarget(target.getName());
+                }
+                report.addAll(verification.entries);
+                if (unusedBundles != null) {
+                    // only keep the bundles which are unused in all targets
+                    Set<String> unused = verification.unusedBundles != null
+                            ? verification.unusedBundles : Collections.<String>emptySet();
+                    Set<String> previous = unusedBundles.get(featuresToTest.get(i).getId());
+                    if (previous == null) {
+                        unusedBundles.put(featuresToTest.get(i).getId(), new TreeSet<>(unused));
                     } else {
-                        getLog().warn(e);
+                        previous.retainAll(unused);
+                    }
+                }
+                if ("first".equals(fail) && !failures.isEmpty()) {
+                    for (Future<FeatureVerification> f : verifications) {
+                        f.cancel(true);
                     }
-                    failures.add(e);
-                    if ("first".equals(fail)) {
-                        throw e;
+                    Exception first = failures.get(0);
+                    if (first instanceof MojoExecutionException) {
+                        throw (MojoExecutionException) first;
                     }
+                    throw new MojoExecutionException(first.getMessage(), first);
                 }
             }
+        } finally {
+            workers.shutdownNow();
         }
-        if ("end".equals(fail) && !failures.isEmpty()) {
-            throw new MojoExecutionException("Verification failures", new MultiException("Verification failures", failures));
-        }
+        return failures;
     }
 
-    private void verifyResolution(DownloadManager manager, final Map<String, Features> repositories, Set<String> features, Hashtable<String, String> properties) throws MojoExecutionException {
+    /**
+     * Write the verified features without the bundles which are unused in all targets.
+     */
+    private void writePrunedDescriptor(List<Feature> featuresToTest) {
+        if (prunedDescriptor == null) {
+            return;
+        }
         try {
-            Bundle systemBundle = getSystemBundle(getMetadata(properties, "metadata#"));
-            DummyDeployCallback callback = new DummyDeployCallback(systemBundle, repositories.values());
-            Deployer deployer = new Deployer(manager, new ResolverImpl(new MavenResolverLog()), callback);
+            Features features = prune(featuresToTest, unusedBundles, project.getArtifactId() + "-pruned");
+            File dir = prunedDescriptor.getAbsoluteFile().getParentFile();
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Unable to create directory " + dir);
+            }
+            try (OutputStream os = new FileOutputStream(prunedDescriptor)) {
+                JaxbUtil.marshal(features, os);
+            }
+        } catch (Exception e) {
+            getLog().warn("Unable to write pruned descriptor to " + prunedDescriptor, e);
+        }
+    }
 
+    /**
+     * Copy the verified features without their bundles which are unused.  The given features are not modified.
+     *
+     * @param unusedBundles the unused bundles of each verified feature, by feature id
+     * @param name          the name of the resulting repository
+     */
+    public static Features prune(Collection<Feature> features, Map<String, Set<String>> unusedBundles, String name) throws Exception {
+        Features verified = new Features();
+        verified.setName(name);
+        for (Feature feature : features) {
+            if (unusedBundles.containsKey(feature.getId())) {
+                verified.getFeature().add(feature);
+            }
+        }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        JaxbUtil.marshal(verified, baos);
+        Features pruned = JaxbUtil.unmarshal(name, new ByteArrayInputStream(baos.toByteArray()), false);
+        for (Feature feature : pruned.getFeature()) {
+            Set<String> unused = unusedBundles.get(feature.getId());
+            for (Iterator<org.apache.karaf.features.internal.model.Bundle> iterator = feature.getBundle().iterator(); iterator.hasNext();) {
+                if (unused.contains(iterator.next().getLocation().trim())) {
+                    iterator.remove();
+                }
+            }
+        }
+        return pruned;
+    }
 
-            // Install framework
-            Deployer.DeploymentRequest request = createDeploymentRequest();
+    private void writeReport(VerificationReport report) {
+        if (reportFile != null) {
+            try {
+                report.write(reportFile, reportFormat);
+            } catch (IOException e) {
+                getLog().warn("Unable to write verification report to " + reportFile, e);
+            }
+        }
+    }
 
-            for (String fmwk : framework) {
-                MapUtils.addToMapSet(request.requirements, FeaturesService.ROOT_REGION, fmwk);
+    private void verifyFeature(Feature feature, SharedDownloadManager manager, Map<String, Features> repositories,
+                               Map<String, List<Feature>> featuresByName, DummyDeployCallback frameworkSnapshot,
+                               FeatureVerification verification, AtomicBoolean aborted) {
+        Log log = verification.log;
+        String id = feature.getName() + "/" + feature.getVersion();
+        FeatureFingerprints fingerprints = verification.fingerprints;
+        String definition = null;
+        if (fingerprints != null) {
+            try {
+                definition = getDefinition(feature, featuresByName);
+            } catch (Exception e) {
+                log.warn("Unable to compute the definition of feature " + id, e);
+            }
+            if (definition != null && fingerprints.isUpToDate(id, definition)) {
+                log.info("Verification of feature " + id + " skipped, it is up to date");
+                verification.addEntry(id, "feature").setOutcome(VerificationReport.SKIPPED);
+                return;
+            }
+        }
+        Set<String> locations = new HashSet<>();
+        if (unusedBundles != null) {
+            verification.unusedBundles = new TreeSet<>();
+            for (org.apache.karaf.features.internal.model.Bundle bi : feature.getBundle()) {
+                verification.unusedBundles.add(bi.getLocation().trim());
             }
+        }
+        VerificationReport.Entry entry = verification.addEntry(id, "feature");
+        long start = System.currentTimeMillis();
+        try {
+            if (packagePrecheck) {
+                checkPackages(feature, manager, featuresByName, frameworkSnapshot, log);
+            }
+            DummyDeployCallback callback = verifyResolution(manager.fork(),
+                             repositories, Collections.singleton(id), frameworkSnapshot, verification.framework, log, verification.resolverExecutor, entry);
+            locations.addAll(callback.getBundleLocations());
+            verification.retainUnused(callback);
+            entry.setOutcome(VerificationReport.SUCCESS);
+            log.info("Verification of feature " + id + " succeeded");
+        } catch (Exception e) {
+            verification.retainUnused(null);
+            entry.setOutcome(VerificationReport.FAILURE);
+            entry.setMessage(e.getMessage());
+            // the package check reports failures without a cause
+            if (e.getCause() == null || e.getCause() instanceof ResolutionException) {
+                log.warn(e.getMessage());
+            } else {
+                log.warn(e);
+            }
+            verification.failures.add(e);
+            if ("first".equals(fail)) {
+                aborted.set(true);
+                return;
+            }
+        } finally {
+            entry.setWallTime(System.currentTimeMillis() - start);
+        }
+        List<Conditional> conditionals = feature.getConditional();
+        if (batchConditionals && conditionals.size() > 1) {
+            if (!verifyConditionals(feature, conditionals, manager, repositories, frameworkSnapshot, verification, locations, aborted)) {
+                return;
+            }
+        } else {
+            for (Conditional cond : conditionals) {
+                if (!verifyConditional(feature, cond, manager, repositories, frameworkSnapshot, verification, locations, aborted)) {
+                    return;
+                }
+            }
+        }
+        if (verification.unusedBundles != null && !verification.unusedBundles.isEmpty()) {
+            log.info("Bundles of feature " + id + " which no other bundle is wired to: " + toString(verification.unusedBundles));
+        }
+        if (definition != null && verification.failures.isEmpty()) {
             try {
-                deployer.deploy(callback.getDeploymentState(), request);
+                fingerprints.record(id, definition, locations);
             } catch (Exception e) {
-                throw new MojoExecutionException("Unable to resolve framework features", e);
+                log.warn("Unable to record the fingerprint of feature " + id, e);
+            }
+        }
+    }
+
+    /**
+     * Check the mandatory package imports of the bundles of a feature against the packages exported by the
+     * framework and by the bundles of all the features it may depend on, without running the resolver.
+     *
+     * @throws MojoExecutionException if some imports can not be satisfied
+     */
+    private void checkPackages(Feature feature, DownloadManager manager, Map<String, List<Feature>> featuresByName,
+                               DummyDeployCallback frameworkSnapshot, Log log) throws MojoExecutionException {
+        String id = feature.getName() + "/" + feature.getVersion();
+        Set<String> locations = new LinkedHashSet<>();
+        for (Feature f : getClosure(feature, featuresByName)) {
+            for (org.apache.karaf.features.internal.model.Bundle bi : f.getBundle()) {
+                locations.add(bi.getLocation().trim());
+            }
+            for (Conditional cond : f.getConditional()) {
+                for (org.apache.karaf.features.internal.model.Bundle bi : cond.getBundle()) {
+                    locations.add(bi.getLocation().trim());
+                }
+            }
+        }
+        Map<String, Map<String, String>> headers;
+        try {
+            headers = frameworkSnapshot.getHeaders(manager, locations);
+        } catch (Exception e) {
+            // leave the failure to the resolution
+            log.debug("Package check of feature " + id + " skipped: " + e.getMessage());
+            return;
+        }
+
+        PackageIndex index = new PackageIndex();
+        for (Bundle bundle : frameworkSnapshot.getDeploymentState().bundles.values()) {
+            Map<String, String> bundleHeaders = new HashMap<>();
+            for (Enumeration<String> e = bundle.getHeaders().keys(); e.hasMoreElements(); ) {
+                String key = e.nextElement();
+                bundleHeaders.put(key, bundle.getHeaders().get(key));
+            }
+            index.addExports(bundleHeaders);
+        }
+        for (Map<String, String> bundleHeaders : headers.values()) {
+            index.addExports(bundleHeaders);
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (org.apache.karaf.features.internal.model.Bundle bi : feature.getBundle()) {
+            String location = bi.getLocation().trim();
+            if (bi.isDependency() || !headers.containsKey(location)) {
+                continue;
+            }
+            for (Clause clause : index.getMissingImports(headers.get(location))) {
+                sb.append("\n\t").append(location).append(" imports ").append(clause);
+            }
+        }
+        if (sb.length() > 0) {
+            String message = "Missing packages, not exported by the framework or by any feature " + id + " may depend on:" + sb;
+            throw new MojoExecutionException("Feature resolution failed for [" + id + "]\nMessage: " + message);
+        }
+    }
+
+    /**
+     * Check if some features declare package capabilities, which the package check can not take into account.
+     */
+    private static boolean hasPackageCapabilities(Map<String, Features> repositories) {
+        for (Features repo : repositories.values()) {
+            for (Feature feature : repo.getFeature()) {
+                for (org.apache.karaf.features.internal.model.Capability cap : feature.getCapabilities()) {
+                    if (cap.getValue() != null && cap.getValue().contains(PackageNamespace.PACKAGE_NAMESPACE)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Verify a feature with one of its conditionals.
+     *
+     * @return <code>false</code> if the verification has been aborted
+     */
+    private boolean verifyConditional(Feature feature, Conditional cond, DownloadManager manager,
+                                      Map<String, Features> repositories, DummyDeployCallback frameworkSnapshot,
+                                      FeatureVerification verification, Set<String> locations, AtomicBoolean aborted) {
+        Log log = verification.log;
+        Set<String> ids = new LinkedHashSet<>();
+        ids.add(feature.getId());
+        ids.addAll(cond.getCondition());
+        VerificationReport.Entry entry = verification.addEntry(ids.toString(), "conditional");
+        long start = System.currentTimeMillis();
+        try {
+            DummyDeployCallback callback = verifyResolution(manager, repositories, ids, frameworkSnapshot, verification.framework, log, verification.resolverExecutor, entry);
+            locations.addAll(callback.getBundleLocations());
+            verification.retainUnused(callback);
+            entry.setOutcome(VerificationReport.SUCCESS);
+            log.info("Verification of feature " + ids + " succeeded");
+        } catch (Exception e) {
+            entry.setOutcome(VerificationReport.FAILURE);
+            entry.setMessage(e.getMessage());
+            if (isMissingCondition(e, cond.getCondition())) {
+                entry.setOutcome(VerificationReport.IGNORED);
+                log.warn("Feature resolution failed for " + ids
+                        + "\nMessage: " + e.getCause().getMessage());
+                return true;
+            }
+            if (e.getCause() instanceof ResolutionException) {
+                log.warn(e.getMessage());
+            } else {
+                log.warn(e);
+            }
+            verification.failures.add(e);
+            if ("first".equals(fail)) {
+                aborted.set(true);
+                return false;
+            }
+        } finally {
+            entry.setWallTime(System.currentTimeMillis() - start);
+        }
+        return true;
+    }
+
+    /**
+     * Check if a resolution failed only because some of the given conditions are missing, and should be ignored.
+     */
+    private boolean isMissingCondition(Exception e, Collection<String> conditions) {
+        if (ignoreMissingConditions && e.getCause() instanceof ResolutionException) {
+            boolean ignore = true;
+            Collection<Requirement> requirements = ((ResolutionException) e.getCause()).getUnresolvedRequirements();
+            for (Requirement req : requirements) {
+                ignore &= (IdentityNamespace.IDENTITY_NAMESPACE.equals(req.getNamespace())
+                        && ResourceUtils.TYPE_FEATURE.equals(req.getAttributes().get("type"))
+                        && conditions.contains(req.getAttributes().get(IdentityNamespace.IDENTITY_NAMESPACE).toString()));
+            }
+            return ignore;
+        }
+        return false;
+    }
+
+    /**
+     * Verify a feature with all the given conditionals in a single resolution.  If it fails, the conditionals are
+     * bisected until the failing conditionals, or the groups of conditionals which only fail together, are isolated.
+     *
+     * @return <code>false</code> if the verification has been aborted
+     */
+    private boolean verifyConditionals(final Feature feature, List<Conditional> conditionals, final DownloadManager manager,
+                                       final Map<String, Features> repositories, final DummyDeployCallback frameworkSnapshot,
+                                       final FeatureVerification verification, final Set<String> locations, final AtomicBoolean aborted) {
+        final Map<List<Conditional>, VerificationReport.Entry> failedEntries = new IdentityHashMap<>();
+        final Map<List<Conditional>, Exception> failedBatches = new IdentityHashMap<>();
+        List<List<Conditional>> failures = Bisection.bisect(conditionals, new Bisection.Check<Conditional>() {
+            @Override
+            public boolean verify(List<Conditional> batch) {
+                if (aborted.get()) {
+                    // nothing left to bisect
+                    return true;
+                }
+                if (batch.size() == 1) {
+                    int nbFailures = verification.failures.size();
+                    verifyConditional(feature, batch.get(0), manager, repositories, frameworkSnapshot, verification, locations, aborted);
+                    return verification.failures.size() == nbFailures;
+                }
+                Set<String> ids = new LinkedHashSet<>();
+                ids.add(feature.getId());
+                for (Conditional cond : batch) {
+                    ids.addAll(cond.getCondition());
+                }
+                VerificationReport.Entry entry = verification.addEntry(ids.toString(), "conditionals");
+                long start = System.currentTimeMillis();
+                try {
+                    DummyDeployCallback callback = verifyResolution(manager, repositories, ids, frameworkSnapshot, verification.framework, verification.log, verification.resolverExecutor, entry);
+                    locations.addAll(callback.getBundleLocations());
+                    verification.retainUnused(callback);
+                    entry.setOutcome(VerificationReport.SUCCESS);
+                    verification.log.info("Verification of feature " + ids + " succeeded");
+                    verification.log.debug("Conditionals of feature " + ids + " have been verified together,"
+                            + " conditionals which only resolve with another one are not detected");
+                    return true;
+                } catch (Exception e) {
+                    entry.setOutcome(VerificationReport.BISECTED);
+                    entry.setMessage(e.getMessage());
+                    failedEntries.put(batch, entry);
+                    failedBatches.put(batch, e);
+                    verification.log.debug("Verification of feature " + ids + " failed, verifying its conditionals separately");
+                    return false;
+                } finally {
+                    entry.setWallTime(System.currentTimeMillis() - start);
+                }
+            }
+        });
+        for (List<Conditional> batch : failures) {
+            if (batch.size() > 1 && !aborted.get()) {
+                // each part resolves on its own, the conditionals only fail when installed together
+                Exception e = failedBatches.get(batch);
+                List<String> conditions = new ArrayList<>();
+                for (Conditional cond : batch) {
+                    conditions.addAll(cond.getCondition());
+                }
+                if (isMissingCondition(e, conditions)) {
+                    failedEntries.get(batch).setOutcome(VerificationReport.IGNORED);
+                    verification.log.warn(e.getMessage());
+                    continue;
+                }
+                failedEntries.get(batch).setOutcome(VerificationReport.FAILURE);
+                if (e.getCause() instanceof ResolutionException) {
+                    verification.log.warn(e.getMessage());
+                } else {
+                    verification.log.warn(e);
+                }
+                verification.failures.add(e);
+                if ("first".equals(fail)) {
+                    aborted.set(true);
+                }
+            }
+        }
+        return !aborted.get();
+    }
+
+    /**
+     * Describe everything, besides the features themselves, which influences the verification.
+     */
+    private String getFingerprintContext(Map<String, String> properties, VerificationTarget target) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("framework=").append(new TreeSet<>(target.getFramework())).append("\n");
+        sb.append("javase=").append(target.getJavase() != null ? target.getJavase() : System.getProperty("java.specification.version")).append("\n");
+        sb.append("configuration=").append(target.getConfiguration()).append("\n");
+        Artifact karafDistro = project.getArtifactMap().get(target.getDistribution());
+        sb.append("distribution=").append(karafDistro != null ? karafDistro.getId() : target.getDistribution()).append("\n");
+        sb.append("ignoreMissingConditions=").append(ignoreMissingConditions).append("\n");
+        for (Map.Entry<String, String> entry : new TreeMap<>(properties).entrySet()) {
+            sb.append(entry.getKey()).append("=").append(entry.getValue()).append("\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Get the xml definition of a feature and of all the features it may depend on.
+     */
+    private String getDefinition(Feature feature, Map<String, List<Feature>> featuresByName) throws Exception {
+        Features features = new Features();
+        features.getFeature().addAll(getClosure(feature, featuresByName));
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        JaxbUtil.marshal(features, baos);
+        return baos.toString("UTF-8");
+    }
+
+    private static Map<String, List<Feature>> getFeaturesByName(Map<String, Features> repositories) {
+        Map<String, List<Feature>> featuresByName = new HashMap<>();
+        for (Features repo : repositories.values()) {
+            for (Feature f : repo.getFeature()) {
+                List<Feature> named = featuresByName.get(f.getName());
+                if (named == null) {
+                    named = new ArrayList<>();
+                    featuresByName.put(f.getName(), named);
+                }
+                named.add(f);
+            }
+        }
+        return featuresByName;
+    }
+
+    /**
+     * Get a feature and all the features it may depend on, sorted by id.
+     */
+    private static Collection<Feature> getClosure(Feature feature, Map<String, List<Feature>> featuresByName) {
+        Map<String, Feature> closure = new TreeMap<>();
+        Deque<Feature> toVisit = new ArrayDeque<>();
+        toVisit.add(feature);
+        while (!toVisit.isEmpty()) {
+            Feature f = toVisit.remove();
+            if (closure.put(f.getId(), f) != null) {
+                continue;
+            }
+            Set<String> names = new HashSet<>();
+            for (Dependency dep : f.getFeature()) {
+                names.add(dep.getName());
+            }
+            for (Conditional cond : f.getConditional()) {
+                for (String condition : cond.getCondition()) {
+                    names.add(condition.split("/")[0]);
+                }
+                for (Dependency dep : cond.getFeature()) {
+                    names.add(dep.getName());
+                }
+            }
+            for (String name : names) {
+                List<Feature> candidates = featuresByName.get(name);
+                if (candidates != null) {
+                    toVisit.addAll(candidates);
+                }
+            }
+        }
+        return closure.values();
+    }
+
+    private static int getBundleCount(Collection<Feature> features) {
+        int count = 0;
+        for (Feature f : features) {
+            count += f.getBundle().size();
+            for (Conditional cond : f.getConditional()) {
+                count += cond.getBundle().size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The outcome of the verification of a feature and its conditionals.
+     */
+    private static class FeatureVerification {
+        private final BufferedLog log;
+        private final Executor resolverExecutor;
+        private final Set<String> framework;
+        private final FeatureFingerprints fingerprints;
+        private final List<Exception> failures = new ArrayList<>();
+        private final List<VerificationReport.Entry> entries = new ArrayList<>();
+        // bundles of the feature which are not used in any successful resolution, null if not detected
+        private Set<String> unusedBundles;
+
+        /**
+         * @param resolverExecutor the executor used by the resolver, or <code>null</code> to resolve sequentially
+         * @param framework        the framework features of the target
+         * @param fingerprints     the fingerprints of the target, or <code>null</code> if not incremental
+         */
+        private FeatureVerification(BufferedLog log, Executor resolverExecutor, Set<String> framework,
+                                    FeatureFingerprints fingerprints) {
+            this.log = log;
+            this.resolverExecutor = resolverExecutor;
+            this.framework = framework;
+            this.fingerprints = fingerprints;
+        }
+
+        private VerificationReport.Entry addEntry(String id, String type) {
+            VerificationReport.Entry entry = new VerificationReport.Entry(id, type);
+            entries.add(entry);
+            return entry;
+        }
+
+        /**
+         * Only keep the bundles which are not used by the given successful resolution.
+         *
+         * @param callback the resolution, or <code>null</code> if the feature itself failed to resolve, in which
+         *                 case nothing can be told about its unused bundles
+         */
+        private void retainUnused(DummyDeployCallback callback) {
+            if (callback == null) {
+                unusedBundles = null;
+            } else if (unusedBundles != null) {
+                unusedBundles.retainAll(callback.getUnusedBundleLocations());
+            }
+        }
+    }
+
+    /**
+     * Resolve the framework features once, so that each verification can start from a fork of the resulting state
+     * instead of resolving them again.
+     */
+    private DummyDeployCallback resolveFramework(DownloadManager manager, Map<String, Features> repositories, Hashtable<String, String> properties, ManifestCache manifestCache, CapabilityIndex capabilityIndex, VerificationTarget target) throws MojoExecutionException, MojoFailureException {
+        Bundle systemBundle;
+        try {
+            systemBundle = getSystemBundle(getMetadata(properties, "metadata#"), target);
+        } catch (MojoFailureException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new MojoExecutionException("Unable to build the system bundle\nMessage: " + e.getMessage(), e);
+        }
+        try {
+            DummyDeployCallback callback = new DummyDeployCallback(systemBundle, repositories.values(), manager, manifestCache, capabilityIndex);
+            Deployer deployer = new Deployer(manager, createResolver(new MavenResolverLog(getLog()), resolverExecutor), callback);
+            Deployer.DeploymentRequest request = createDeploymentRequest();
+            for (String fmwk : target.getFramework()) {
+                MapUtils.addToMapSet(request.requirements, FeaturesService.ROOT_REGION, fmwk);
+            }
+            deployer.deploy(callback.getDeploymentState(), request);
+            return callback;
+        } catch (Exception e) {
+            throw new MojoExecutionException("Unable to resolve framework features", e);
+        }
+    }
+
+    /**
+     * Create a resolver, running in parallel on the given executor if any, sequentially otherwise.
+     */
+    private static ResolverImpl createResolver(Logger logger, Executor executor) {
+        return executor != null ? new ResolverImpl(logger, executor) : new ResolverImpl(logger, 1);
+    }
+
+    private DummyDeployCallback verifyResolution(DownloadManager manager, final Map<String, Features> repositories, Set<String> features, DummyDeployCallback frameworkSnapshot, Set<String> framework, Log log, Executor executor, VerificationReport.Entry entry) throws MojoExecutionException {
+        try {
+            DummyDeployCallback callback = frameworkSnapshot.fork(manager);
+            Resolver osgiResolver;
+            if (resolverProfile != null) {
+                ResolverProfile.Stats stats = resolverProfile.start(entry.getId());
+                osgiResolver = resolverProfile.wrap(stats, new TimingResolver(createResolver(resolverProfile.createLogger(stats, log), executor), entry));
+            } else {
+                osgiResolver = new TimingResolver(createResolver(new MavenResolverLog(log), executor), entry);
             }
+            Deployer deployer = new Deployer(new TimingDownloadManager(manager, entry), osgiResolver, callback);
 
+            // The framework is already installed in the forked state
+            Deployer.DeploymentRequest request = createDeploymentRequest();
+            for (String fmwk : framework) {
+                MapUtils.addToMapSet(request.requirements, FeaturesService.ROOT_REGION, fmwk);
+            }
 
             /*
             boolean resolveOptionalImports = getResolveOptionalImports(properties);
@@ -405,7 +1414,8 @@ public class VerifyMojo extends MojoSupport {
                         }
                     }
                 }
-                // TODO: find unused resources ?
+                entry.setBundles(callback.getBundleLocations().size());
+                return callback;
             } catch (Exception e) {
                 throw new MojoExecutionException("Feature resolution failed for " + features
                         + "\nMessage: " + e.getMessage()
@@ -443,30 +1453,38 @@ public class VerifyMojo extends MojoSupport {
         return sb.toString();
     }
 
-    private Bundle getSystemBundle(Map<String, Map<VersionRange, Map<String, String>>> metadata) throws Exception {
+    private Bundle getSystemBundle(Map<String, Map<VersionRange, Map<String, String>>> metadata, VerificationTarget target) throws Exception {
         URL configPropURL;
-        if (configuration != null) {
-            configPropURL = new URL(configuration);
+        if (target.getConfiguration() != null) {
+            configPropURL = new URL(target.getConfiguration());
+        } else if (target.getDistribution().startsWith("mvn:")) {
+            // mvn:groupId/artifactId/version[/type[/classifier]]
+            String[] parts = target.getDistribution().substring("mvn:".length()).split("/");
+            if (parts.length < 3) {
+                throw new MojoFailureException("Invalid karaf distribution url " + target.getDistribution());
+            }
+            String dir = distDir;
+            if (dir == null) {
+                dir = parts.length > 3 && "kar".equals(parts[3]) ? "resources" : parts[1] + "-" + parts[2];
+            }
+            configPropURL = new URL("jar:file:" + resolver.resolve(target.getDistribution()) + "!/" + dir + "/etc/config.properties");
         } else {
-            Artifact karafDistro = project.getArtifactMap().get(distribution);
+            Artifact karafDistro = project.getArtifactMap().get(target.getDistribution());
             if (karafDistro == null) {
-                throw new MojoFailureException("The karaf distribution " + distribution + " is not a dependency");
-            }
-            if ("kar".equals(karafDistro.getType()) && distDir == null) {
-                distDir = "resources";
+                throw new MojoFailureException("The karaf distribution " + target.getDistribution() + " is not a dependency");
             }
             String dir = distDir;
             if (dir == null) {
-                dir = karafDistro.getArtifactId() + "-" + karafDistro.getBaseVersion();
+                dir = "kar".equals(karafDistro.getType()) ? "resources" : karafDistro.getArtifactId() + "-" + karafDistro.getBaseVersion();
             }
             configPropURL = new URL("jar:file:" + karafDistro.getFile() + "!/" + dir + "/etc/config.properties");
         }
         org.apache.felix.utils.properties.Properties configProps = PropertiesLoader.loadPropertiesFile(configPropURL, true);
 //        copySystemProperties(configProps);
-        if (javase == null) {
+        if (target.getJavase() == null) {
             configProps.put("java.specification.version", System.getProperty("java.specification.version"));
         } else {
-            configProps.put("java.specification.version", javase);
+            configProps.put("java.specification.version", target.getJavase());
         }
         configProps.substitute();
 
@@ -505,8 +1523,10 @@ public class VerifyMojo extends MojoSupport {
             downloader.download(repository, new DownloadCallback() {
                 @Override
                 public void downloaded(final StreamProvider provider) throws Exception {
-                    try (InputStream is = provider.open()) {
+                    try (InputStream is = provider.open();
+                         Instrumentation.Span span = Instrumentation.start(Instrumentation.Kind.DESCRIPTOR_PARSING, provider.getUrl())) {
                         Features featuresModel = JaxbUtil.unmarshal(provider.getUrl(), is, false);
+                        span.setSize(featuresModel.getFeature().size());
                         synchronized (loaded) {
                             loaded.put(provider.getUrl(), featuresModel);
                             for (String innerRepository : featuresModel.getRepository()) {
@@ -576,48 +1596,19 @@ public class VerifyMojo extends MojoSupport {
         private int startLevel;
 
         public FakeBundleRevision(final Hashtable<String, String> headers, final String location, final long bundleId) throws BundleException {
-            ResourceBuilder.build(this, location, headers);
-            this.bundle = (Bundle) Proxy.newProxyInstance(
-                    getClass().getClassLoader(),
-                    new Class[] { Bundle.class },
-                    new InvocationHandler() {
-                        @Override
-                        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-                            if (method.getName().equals("hashCode")) {
-                                return FakeBundleRevision.this.hashCode();
-                            } else if (method.getName().equals("equals")) {
-                                return proxy == args[0];
-                            } else if (method.getName().equals("toString")) {
-                                return bundle.getSymbolicName() + "/" + bundle.getVersion();
-                            } else if (method.getName().equals("adapt")) {
-                                if (args.length == 1 && args[0] == BundleRevision.class) {
-                                    return FakeBundleRevision.this;
-                                } else if (args.length == 1 && args[0] == BundleStartLevel.class) {
-                                    return FakeBundleRevision.this;
-                                }
-                            } else if (method.getName().equals("getHeaders")) {
-                                return headers;
-                            } else if (method.getName().equals("getBundleId")) {
-                                return bundleId;
-                            } else if (method.getName().equals("getLocation")) {
-                                return location;
-                            } else if (method.getName().equals("getSymbolicName")) {
-                                String name = headers.get(Constants.BUNDLE_SYMBOLICNAME);
-                                int idx = name.indexOf(';');
-                                if (idx > 0) {
-                                    name = name.substring(0, idx).trim();
-                                }
-                                return name;
-                            } else if (method.getName().equals("getVersion")) {
-                                return new Version(headers.get(Constants.BUNDLE_VERSION));
-                            } else if (method.getName().equals("getState")) {
-                                return Bundle.ACTIVE;
-                            } else if (method.getName().equals("getLastModified")) {
-                                return 0l;
-                            }
-                            return null;
-                        }
-                    });
+            this(headers, location, bundleId, null);
+        }
+
+        /**
+         * @param capabilityIndex the index used to build the capabilities and requirements, may be <code>null</code>
+         */
+        public FakeBundleRevision(final Hashtable<String, String> headers, final String location, final long bundleId, CapabilityIndex capabilityIndex) throws BundleException {
+            if (capabilityIndex != null) {
+                capabilityIndex.build(this, location, headers);
+            } else {
+                ResourceBuilder.build(this, location, headers);
+            }
+            this.bundle = new FakeBundle(this, headers, location, bundleId);
         }
 
         @Override
@@ -676,14 +1667,219 @@ public class VerifyMojo extends MojoSupport {
         }
     }
 
+    /**
+     * A fake installed bundle, whose identity is computed once from its headers.
+     */
+    public static class FakeBundle implements Bundle {
+
+        private final BundleRevision revision;
+        private final Hashtable<String, String> headers;
+        private final String location;
+        private final long bundleId;
+        private final String symbolicName;
+        private final Version version;
+        private final String toString;
+
+        public FakeBundle(BundleRevision revision, Hashtable<String, String> headers, String location, long bundleId) {
+            this.revision = revision;
+            this.headers = headers;
+            this.location = location;
+            this.bundleId = bundleId;
+            String name = headers.get(Constants.BUNDLE_SYMBOLICNAME);
+            if (name != null) {
+                int idx = name.indexOf(';');
+                if (idx > 0) {
+                    name = name.substring(0, idx).trim();
+                }
+            }
+            this.symbolicName = name;
+            this.version = Version.parseVersion(headers.get(Constants.BUNDLE_VERSION));
+            this.toString = symbolicName + "/" + version;
+        }
+
+        @Override
+        public int getState() {
+            return Bundle.ACTIVE;
+        }
+
+        @Override
+        public void start(int options) {
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void stop(int options) {
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public void update(InputStream input) {
+        }
+
+        @Override
+        public void update() {
+        }
+
+        @Override
+        public void uninstall() {
+        }
+
+        @Override
+        public Dictionary<String, String> getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public long getBundleId() {
+            return bundleId;
+        }
+
+        @Override
+        public String getLocation() {
+            return location;
+        }
+
+        @Override
+        public ServiceReference<?>[] getRegisteredServices() {
+            return null;
+        }
+
+        @Override
+        public ServiceReference<?>[] getServicesInUse() {
+            return null;
+        }
+
+        @Override
+        public boolean hasPermission(Object permission) {
+            return true;
+        }
+
+        @Override
+        public URL getResource(String name) {
+            return null;
+        }
+
+        @Override
+        public Dictionary<String, String> getHeaders(String locale) {
+            return headers;
+        }
+
+        @Override
+        public String getSymbolicName() {
+            return symbolicName;
+        }
+
+        @Override
+        public Class<?> loadClass(String name) throws ClassNotFoundException {
+            throw new ClassNotFoundException(name);
+        }
+
+        @Override
+        public Enumeration<URL> getResources(String name) {
+            return null;
+        }
+
+        @Override
+        public Enumeration<String> getEntryPaths(String path) {
+            return null;
+        }
+
+        @Override
+        public URL getEntry(String path) {
+            return null;
+        }
+
+        @Override
+        public long getLastModified() {
+            return 0l;
+        }
+
+        @Override
+        public Enumeration<URL> findEntries(String path, String filePattern, boolean recurse) {
+            return null;
+        }
+
+        @Override
+        public BundleContext getBundleContext() {
+            return null;
+        }
+
+        @Override
+        public Map<X509Certificate, List<X509Certificate>> getSignerCertificates(int signersType) {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public Version getVersion() {
+            return version;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <A> A adapt(Class<A> type) {
+            if (type == BundleRevision.class || type == BundleStartLevel.class) {
+                return (A) revision;
+            }
+            return null;
+        }
+
+        @Override
+        public File getDataFile(String filename) {
+            return null;
+        }
+
+        @Override
+        public int compareTo(Bundle o) {
+            return Long.compare(bundleId, o.getBundleId());
+        }
+
+        @Override
+        public int hashCode() {
+            return revision.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return this == obj;
+        }
+
+        @Override
+        public String toString() {
+            return toString;
+        }
+    }
+
     public static class DummyDeployCallback implements Deployer.DeployCallback {
 
         private final Bundle systemBundle;
         private final Deployer.DeploymentState dstate;
         private final AtomicLong nextBundleId = new AtomicLong(0);
+        private final Map<Resource, List<Wire>> wiring = new HashMap<>();
+        private final Map<Resource, Bundle> resToBnd = new HashMap<>();
+        private final DownloadManager manager;
+        private final ManifestCache manifestCache;
+        private final CapabilityIndex capabilityIndex;
 
         public DummyDeployCallback(Bundle sysBundle, Collection<Features> repositories) throws Exception {
+            this(sysBundle, repositories, null, null, null);
+        }
+
+        /**
+         * @param manager the download manager used to locate the files of installed bundles
+         * @param manifestCache the cache used to look up the headers of installed bundles, may be <code>null</code>
+         * @param capabilityIndex the index used to build the installed bundles, may be <code>null</code>
+         */
+        public DummyDeployCallback(Bundle sysBundle, Collection<Features> repositories, DownloadManager manager, ManifestCache manifestCache, CapabilityIndex capabilityIndex) throws Exception {
             systemBundle = sysBundle;
+            this.manager = manager;
+            this.manifestCache = manifestCache;
+            this.capabilityIndex = capabilityIndex;
             dstate = new Deployer.DeploymentState();
             dstate.bundles = new HashMap<>();
             dstate.features = new HashMap<>();
@@ -700,10 +1896,80 @@ public class VerifyMojo extends MojoSupport {
             }
         }
 
+        private DummyDeployCallback(DummyDeployCallback snapshot, DownloadManager manager) {
+            systemBundle = snapshot.systemBundle;
+            this.manager = manager;
+            this.manifestCache = snapshot.manifestCache;
+            this.capabilityIndex = snapshot.capabilityIndex;
+            dstate = new Deployer.DeploymentState();
+            dstate.bundles = new HashMap<>(snapshot.dstate.bundles);
+            // features are never modified, so they can be shared between forks
+            dstate.features = snapshot.dstate.features;
+            dstate.bundlesPerRegion = new HashMap<>();
+            for (Map.Entry<String, Set<Long>> entry : snapshot.dstate.bundlesPerRegion.entrySet()) {
+                dstate.bundlesPerRegion.put(entry.getKey(), new HashSet<>(entry.getValue()));
+            }
+            dstate.filtersPerRegion = new HashMap<>(snapshot.dstate.filtersPerRegion);
+            dstate.state = snapshot.dstate.state.copy();
+            nextBundleId.set(snapshot.nextBundleId.get());
+        }
+
+        /**
+         * Create a new callback starting from a copy of this one's deployment state.
+         * The state of this callback is left untouched, so it can be forked concurrently.
+         */
+        public DummyDeployCallback fork(DownloadManager manager) {
+            return new DummyDeployCallback(this, manager);
+        }
+
         public Deployer.DeploymentState getDeploymentState() {
             return dstate;
         }
 
+        /**
+         * @return the locations of all the installed bundles, except the system bundle
+         */
+        public Set<String> getBundleLocations() {
+            Set<String> locations = new HashSet<>();
+            for (Bundle bundle : dstate.bundles.values()) {
+                if (bundle.getBundleId() != 0) {
+                    locations.add(bundle.getLocation());
+                }
+            }
+            return locations;
+        }
+
+        /**
+         * @return the locations of the installed bundles which no other bundle is wired to, except the system
+         * bundle and fragments
+         */
+        public Set<String> getUnusedBundleLocations() {
+            Set<String> unused = new HashSet<>();
+            if (wiring.isEmpty()) {
+                return unused;
+            }
+            Set<Resource> used = new HashSet<>();
+            for (Map.Entry<Resource, List<Wire>> entry : wiring.entrySet()) {
+                if (!resToBnd.containsKey(entry.getKey())) {
+                    // feature resources
+                    continue;
+                }
+                for (Wire wire : entry.getValue()) {
+                    if (wire.getProvider() != entry.getKey()) {
+                        used.add(wire.getProvider());
+                    }
+                }
+            }
+            for (Map.Entry<Resource, Bundle> entry : resToBnd.entrySet()) {
+                Bundle bundle = entry.getValue();
+                if (bundle.getBundleId() != 0 && !used.contains(entry.getKey())
+                        && bundle.getHeaders().get(Constants.FRAGMENT_HOST) == null) {
+                    unused.add(bundle.getLocation());
+                }
+            }
+            return unused;
+        }
+
         @Override
         public void print(String message, boolean verbose) {
         }
@@ -728,18 +1994,11 @@ public class VerifyMojo extends MojoSupport {
         @Override
         public Bundle installBundle(String region, String uri, InputStream is) throws BundleException {
             try {
-                Hashtable<String, String> headers = new Hashtable<>();
-                ZipInputStream zis = new ZipInputStream(is);
-                ZipEntry entry;
-                while ((entry = zis.getNextEntry()) != null) {
-                    if (MANIFEST_NAME.equals(entry.getName())) {
-                        Attributes attributes = new Manifest(zis).getMainAttributes();
-                        for (Map.Entry attr : attributes.entrySet()) {
-                            headers.put(attr.getKey().toString(), attr.getValue().toString());
-                        }
-                    }
+                Hashtable<String, String> headers = getHeaders(uri);
+                if (headers == null) {
+                    headers = new Hashtable<>(ManifestUtils.getHeaders(ManifestReader.read(is)));
                 }
-                BundleRevision revision = new FakeBundleRevision(headers, uri, nextBundleId.incrementAndGet());
+                BundleRevision revision = new FakeBundleRevision(headers, uri, nextBundleId.incrementAndGet(), capabilityIndex);
                 Bundle bundle = revision.getBundle();
                 MapUtils.addToMapSet(dstate.bundlesPerRegion, region, bundle.getBundleId());
                 dstate.bundles.put(bundle.getBundleId(), bundle);
@@ -749,6 +2008,60 @@ public class VerifyMojo extends MojoSupport {
             }
         }
 
+        /**
+         * Download bundles and get their headers.
+         *
+         * @param manager the download manager used to download the bundles
+         * @param locations the bundle locations
+         * @return the headers of each downloaded bundle
+         * @throws Exception if a bundle can not be downloaded or read
+         */
+        public Map<String, Map<String, String>> getHeaders(DownloadManager manager, Collection<String> locations) throws Exception {
+            final Map<String, File> files = new ConcurrentHashMap<>();
+            Downloader downloader = manager.createDownloader();
+            for (final String location : locations) {
+                downloader.download(location, new DownloadCallback() {
+                    @Override
+                    public void downloaded(StreamProvider provider) throws Exception {
+                        File file = provider.getFile();
+                        if (file != null) {
+                            files.put(location, file);
+                        }
+                    }
+                });
+            }
+            downloader.await();
+            Map<String, Map<String, String>> headers = new HashMap<>();
+            for (Map.Entry<String, File> entry : files.entrySet()) {
+                if (entry.getValue().isFile()) {
+                    headers.put(entry.getKey(), getHeaders(entry.getValue()));
+                }
+            }
+            return headers;
+        }
+
+        /**
+         * Get the headers of a bundle from its downloaded file, if it is available.
+         */
+        private Hashtable<String, String> getHeaders(String uri) throws IOException {
+            if (manager == null) {
+                return null;
+            }
+            StreamProvider provider = manager.getProviders().get(uri);
+            File file = provider != null ? provider.getFile() : null;
+            if (file == null || !file.isFile()) {
+                return null;
+            }
+            return getHeaders(file);
+        }
+
+        private Hashtable<String, String> getHeaders(File file) throws IOException {
+            if (manifestCache != null) {
+                return new Hashtable<>(manifestCache.getHeaders(file));
+            }
+            return new Hashtable<>(ManifestUtils.getHeaders(ManifestReader.read(file)));
+        }
+
         @Override
         public void updateBundle(Bundle bundle, String uri, InputStream is) throws BundleException {
             throw new UnsupportedOperationException();
@@ -777,6 +2090,8 @@ public class VerifyMojo extends MojoSupport {
 
         @Override
         public void resolveBundles(Set<Bundle> bundles, Map<Resource, List<Wire>> wiring, Map<Resource, Bundle> resToBnd) {
+            this.wiring.putAll(wiring);
+            this.resToBnd.putAll(resToBnd);
         }
 
         @Override
@@ -784,26 +2099,29 @@ public class VerifyMojo extends MojoSupport {
         }
     }
 
-    public class MavenResolverLog extends org.apache.felix.resolver.Logger {
+    public static class MavenResolverLog extends org.apache.felix.resolver.Logger {
+
+        private final Log log;
 
-        public MavenResolverLog() {
+        public MavenResolverLog(Log log) {
             super(Logger.LOG_DEBUG);
+            this.log = log;
         }
 
         @Override
         protected void doLog(int level, String msg, Throwable throwable) {
             switch (level) {
             case LOG_DEBUG:
-                getLog().debug(msg, throwable);
+                log.debug(msg, throwable);
                 break;
             case LOG_INFO:
-                getLog().info(msg, throwable);
+                log.info(msg, throwable);
                 break;
             case LOG_WARNING:
-                getLog().warn(msg, throwable);
+                log.warn(msg, throwable);
                 break;
             case LOG_ERROR:
-                getLog().error(msg, throwable);
+                log.error(msg, throwable);
                 break;
             }
         }
@@ -17,7 +17,7 @@
  */
 package org.apache.karaf.tooling.client;
 
-import org.apache.maven.plugin.AbstractMojo;
+import org.apache.karaf.tooling.utils.MojoSupport;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
@@ -59,7 +59,7 @@ import java.util.concurrent.TimeUnit;
  * Client MOJO to deployWithSsh command on a running Karaf instance
  */
 @Mojo(name = "client", defaultPhase = LifecyclePhase.PACKAGE, requiresDependencyResolution = ResolutionScope.RUNTIME, threadSafe = true)
-public class ClientMojo extends AbstractMojo {
+public class ClientMojo extends MojoSupport {
 
     @Parameter(defaultValue = "8101")
     private int port;
@@ -90,7 +90,7 @@ public class ClientMojo extends AbstractMojo {
 
     private static final String NEW_LINE = System.getProperty("line.separator");
 
-    public void execute() throws MojoExecutionException {
+    protected void executeGoal() throws MojoExecutionException {
         // Add commands from scripts to already declared commands
         if (scripts != null) {
             for (File script : scripts) {
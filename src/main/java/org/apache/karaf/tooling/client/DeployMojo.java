@@ -106,7 +106,7 @@ public class DeployMojo extends MojoSupport {
 
     private static final String NEW_LINE = System.getProperty("line.separator");
 
-    public void execute() throws MojoExecutionException {
+    protected void executeGoal() throws MojoExecutionException {
         List<String> artifacts = new ArrayList<>();
         if (useProjectArtifact) {
             Artifact projectArtifact = project.getArtifact();
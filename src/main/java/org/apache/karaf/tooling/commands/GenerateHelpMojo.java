@@ -32,15 +32,14 @@ import java.util.TreeSet;
 
 import org.apache.karaf.shell.api.action.Action;
 import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.tooling.utils.MojoSupport;
 import org.apache.maven.artifact.DependencyResolutionRequiredException;
-import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
-import org.apache.maven.project.MavenProject;
 import org.apache.xbean.finder.ClassFinder;
 
 /**
@@ -48,7 +47,7 @@ import org.apache.xbean.finder.ClassFinder;
  */
 @Mojo(name = "commands-generate-help", defaultPhase = LifecyclePhase.GENERATE_RESOURCES,
         requiresDependencyResolution = ResolutionScope.RUNTIME, inheritByDefault = false, threadSafe = true)
-public class GenerateHelpMojo extends AbstractMojo {
+public class GenerateHelpMojo extends MojoSupport {
 
     /**
      * The output folder
@@ -75,17 +74,11 @@ public class GenerateHelpMojo extends AbstractMojo {
     @Parameter(defaultValue = "true")
     protected boolean includeHelpOption;
 
-    /**
-     * The maven project.
-     */
-    @Parameter(defaultValue = "${project}")
-    protected MavenProject project;
-
     private static final String FORMAT_CONF = "conf";
     private static final String FORMAT_DOCBX = "docbx";
     private static final String FORMAT_ASCIIDOC = "asciidoc";
 
-    public void execute() throws MojoExecutionException, MojoFailureException {
+    protected void executeGoal() throws MojoExecutionException, MojoFailureException {
         try {
             if (!FORMAT_DOCBX.equals(format) && !FORMAT_CONF.equals(format) && !FORMAT_ASCIIDOC.equals(format)) {
                 throw new MojoFailureException("Unsupported format: " + format + ". Supported formats are: asciidoc, docbx, or conf.");
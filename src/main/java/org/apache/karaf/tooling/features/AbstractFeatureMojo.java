@@ -24,6 +24,7 @@ import org.apache.karaf.features.Conditional;
 import org.apache.karaf.features.internal.model.*;
 import org.apache.karaf.tooling.utils.DependencyHelper;
 import org.apache.karaf.tooling.utils.DependencyHelperFactory;
+import org.apache.karaf.tooling.utils.Instrumentation;
 import org.apache.karaf.tooling.utils.MojoSupport;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.repository.ArtifactRepository;
@@ -113,7 +114,11 @@ public abstract class AbstractFeatureMojo extends MojoSupport {
             bundles.add(uri);
         }
 
-        Features repo = JaxbUtil.unmarshal(translateFromMaven(descriptor, uri), true);
+        Features repo;
+        try (Instrumentation.Span span = Instrumentation.start(Instrumentation.Kind.DESCRIPTOR_PARSING, uri)) {
+            repo = JaxbUtil.unmarshal(translateFromMaven(descriptor, uri), true);
+            span.setSize(repo.getFeature().size());
+        }
         for (Feature f : repo.getFeature()) {
             featuresMap.put(f.getId(), f);
         }
@@ -144,7 +149,12 @@ public abstract class AbstractFeatureMojo extends MojoSupport {
             List<ArtifactRepository> usedRemoteRepos = artifact.getRepository() != null ? 
                     Collections.singletonList(artifact.getRepository())
                     : remoteRepos;
-            artifactResolver.resolve(artifact, usedRemoteRepos, localRepo);
+            try (Instrumentation.Span span = Instrumentation.start(Instrumentation.Kind.ARTIFACT_RESOLUTION, artifact.toString())) {
+                artifactResolver.resolve(artifact, usedRemoteRepos, localRepo);
+                if (artifact.getFile() != null) {
+                    span.setSize(artifact.getFile().length());
+                }
+            }
         } catch (Exception e) {
             if (failOnArtifactResolutionError) {
                 throw new RuntimeException("Can't resolve artifact " + artifact, e);
@@ -62,7 +62,7 @@ public class AddToRepositoryMojo extends AbstractFeatureMojo {
     @Parameter
     private boolean generateMavenMetadata = false;
 
-    public void execute() throws MojoExecutionException, MojoFailureException {
+    protected void executeGoal() throws MojoExecutionException, MojoFailureException {
         Set<Feature> featuresSet = resolveFeatures();
         
         for (Artifact descriptor : descriptorArtifacts) {
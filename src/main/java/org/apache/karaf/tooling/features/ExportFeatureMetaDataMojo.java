@@ -18,7 +18,6 @@
 package org.apache.karaf.tooling.features;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -27,13 +26,13 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.jar.Attributes;
-import java.util.jar.JarInputStream;
 import java.util.jar.Manifest;
 
 import org.apache.karaf.features.internal.model.Bundle;
 import org.apache.karaf.features.internal.model.Feature;
 import org.apache.karaf.features.internal.model.Features;
 import org.apache.karaf.features.internal.model.JaxbUtil;
+import org.apache.karaf.tooling.utils.ManifestReader;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
@@ -68,7 +67,7 @@ public class ExportFeatureMetaDataMojo extends AbstractFeatureMojo {
     @Parameter(defaultValue = "${project.build.directory}/features.xml")
     private File metaDataFile;
     
-    public void execute() throws MojoExecutionException, MojoFailureException {
+    protected void executeGoal() throws MojoExecutionException, MojoFailureException {
         Set<Feature> featuresSet = resolveFeatures();
         if (mergedFeature) {
             Feature feature = oneVersion ? mergeFeatureOneVersion(featuresSet) : mergeFeature(featuresSet);
@@ -156,8 +155,8 @@ public class ExportFeatureMetaDataMojo extends AbstractFeatureMojo {
             if (artifact.getFile() == null) {
                 resolveArtifact(artifact, remoteRepos);
             }
-            try (JarInputStream jis = new JarInputStream(new FileInputStream(artifact.getFile()))) {
-                Manifest manifest = jis.getManifest();
+            try {
+                Manifest manifest = ManifestReader.read(artifact.getFile());
                 if (manifest != null) {
                     attributes = manifest.getMainAttributes();
                 } else {
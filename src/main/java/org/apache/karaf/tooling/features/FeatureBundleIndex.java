@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.tooling.features;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.karaf.features.internal.model.Bundle;
+import org.apache.karaf.features.internal.model.Dependency;
+import org.apache.karaf.features.internal.model.Feature;
+
+/**
+ * <p>An index of the bundles transitively included by features, used to check whether a bundle is already
+ * provided by the features another feature depends on.</p>
+ *
+ * <p>Bundles are interned to integer ids, and the transitive closure of the bundles of each feature is computed
+ * once as a bit set, so that each check only costs a lookup per direct dependency.  Features depending on each
+ * other, directly or through other features, share the same closure.  The features must not be modified once the
+ * index is in use.</p>
+ */
+public class FeatureBundleIndex {
+
+    private final Map<Dependency, Feature> features;
+    private final Map<Bundle, Integer> ids = new HashMap<>();
+    private final Map<Feature, BitSet> closures = new IdentityHashMap<>();
+
+    /**
+     * @param features the features which can be depended upon, by dependency
+     */
+    public FeatureBundleIndex(Map<Dependency, Feature> features) {
+        this.features = features;
+    }
+
+    /**
+     * Check if a bundle is included by the features the given feature depends on, directly or transitively.
+     *
+     * @param feature the feature
+     * @param bundle the bundle
+     * @return <code>true</code> if one of the dependencies of the feature includes the bundle
+     */
+    public boolean isIncludedTransitively(Feature feature, Bundle bundle) {
+        List<BitSet> dependencies = new ArrayList<>();
+        for (Dependency dependency : feature.getFeature()) {
+            Feature otherFeature = features.get(dependency);
+            if (otherFeature != null) {
+                dependencies.add(getClosure(otherFeature));
+            }
+        }
+        // bundles are interned when computing the closures
+        Integer id = ids.get(bundle);
+        if (id != null) {
+            for (BitSet closure : dependencies) {
+                if (closure.get(id)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private BitSet getClosure(Feature feature) {
+        BitSet closure = closures.get(feature);
+        if (closure == null) {
+            visit(feature, new Walk());
+            closure = closures.get(feature);
+        }
+        return closure;
+    }
+
+    /**
+     * The state of a depth-first walk of the features which do not have a closure yet.
+     */
+    private static class Walk {
+        private final Map<Feature, Integer> indexes = new IdentityHashMap<>();
+        // bundles of the features of the current path, and closures of the components they depend on
+        private final Map<Feature, BitSet> partials = new IdentityHashMap<>();
+        private final Deque<Feature> stack = new ArrayDeque<>();
+    }
+
+    /**
+     * Compute the closures of the strongly connected components reachable from a feature, using Tarjan's
+     * algorithm.  All the features of a component get the union of their bundles and of the closures of the
+     * components they depend on.
+     *
+     * @return the lowest index of the features of the stack reachable from the feature
+     */
+    private int visit(Feature feature, Walk walk) {
+        int index = walk.indexes.size();
+        int lowest = index;
+        walk.indexes.put(feature, index);
+        walk.stack.push(feature);
+        BitSet partial = new BitSet();
+        walk.partials.put(feature, partial);
+        for (Bundle bundle : feature.getBundle()) {
+            partial.set(getId(bundle));
+        }
+        for (Dependency dependency : feature.getFeature()) {
+            Feature otherFeature = features.get(dependency);
+            if (otherFeature == null) {
+                continue;
+            }
+            if (!closures.containsKey(otherFeature) && !walk.indexes.containsKey(otherFeature)) {
+                lowest = Math.min(lowest, visit(otherFeature, walk));
+            }
+            BitSet closure = closures.get(otherFeature);
+            if (closure != null) {
+                // another component, already complete
+                partial.or(closure);
+            } else {
+                // a feature of the same component, still on the stack
+                lowest = Math.min(lowest, walk.indexes.get(otherFeature));
+            }
+        }
+        if (lowest == index) {
+            List<Feature> component = new ArrayList<>();
+            BitSet closure = new BitSet();
+            Feature member;
+            do {
+                member = walk.stack.pop();
+                component.add(member);
+                closure.or(walk.partials.remove(member));
+            } while (member != feature);
+            for (Feature f : component) {
+                closures.put(f, closure);
+            }
+        }
+        return lowest;
+    }
+
+    private int getId(Bundle bundle) {
+        Integer id = ids.get(bundle);
+        if (id == null) {
+            id = ids.size();
+            ids.put(bundle, id);
+        }
+        return id;
+    }
+
+}
@@ -20,27 +20,30 @@ package org.apache.karaf.tooling.features;
 import static java.lang.String.format;
 import static org.apache.karaf.deployer.kar.KarArtifactInstaller.FEATURE_CLASSIFIER;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintStream;
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.jar.JarInputStream;
-import java.util.jar.Manifest;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.xml.bind.JAXBException;
 import javax.xml.parsers.ParserConfigurationException;
@@ -54,13 +57,21 @@ import org.apache.karaf.features.internal.model.JaxbUtil;
 import org.apache.karaf.features.internal.model.ObjectFactory;
 import org.apache.karaf.tooling.utils.DependencyHelper;
 import org.apache.karaf.tooling.utils.DependencyHelperFactory;
+import org.apache.karaf.tooling.utils.DependencyVersionsCache;
+import org.apache.karaf.tooling.utils.Instrumentation;
+import org.apache.karaf.tooling.utils.IoUtils;
 import org.apache.karaf.tooling.utils.LocalDependency;
+import org.apache.karaf.tooling.utils.ManifestCache;
 import org.apache.karaf.tooling.utils.ManifestUtils;
 import org.apache.karaf.tooling.utils.MavenUtil;
 import org.apache.karaf.tooling.utils.MojoSupport;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.resolver.ArtifactNotFoundException;
 import org.apache.maven.artifact.resolver.ArtifactResolutionException;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.model.Activation;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Profile;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugin.logging.Log;
@@ -84,6 +95,7 @@ import org.codehaus.plexus.PlexusContainer;
 import org.codehaus.plexus.util.ReaderFactory;
 import org.codehaus.plexus.util.StringUtils;
 import org.eclipse.aether.artifact.DefaultArtifact;
+import org.osgi.framework.Constants;
 import org.xml.sax.SAXException;
 
 /**
@@ -251,6 +263,15 @@ public class GenerateDescriptorMojo extends MojoSupport {
     @Parameter(defaultValue = "false")
     private boolean includeTransitiveVersionRanges;
 
+    /**
+     * File used to persist, between builds, the dependency versions declared by the POMs of the transitive
+     * dependencies, so that their project model does not have to be built again.  This parameter has only an
+     * effect when {@link #includeTransitiveVersionRanges} is <code>true</code>.  The versions are always
+     * cached for the whole build.
+     */
+    @Parameter
+    private File versionRangesCacheFile;
+
     /**
      * Flag indicating whether the plugin should simplify bundle dependencies. If the flag is set to {@code true}
      * and a bundle dependency is determined to be included in a feature dependency, the bundle dependency is
@@ -295,10 +316,24 @@ public class GenerateDescriptorMojo extends MojoSupport {
     private Log log;
     
     // If useVersionRange is true, this map will be used to cache
-    // resolved MavenProjects
-    private final Map<Artifact, MavenProject> resolvedProjects = new HashMap<>();
+    // the dependency versions declared by the parent artifacts
+    private final Map<String, Map<String, String>> declaredVersions = new HashMap<>();
+
+    // dependency versions declared by the POMs, shared by all the executions of the build
+    private DependencyVersionsCache versionsCache;
+
+    // checksum of what may change the project models besides the POMs
+    private String modelContext;
 
-    public void execute() throws MojoExecutionException, MojoFailureException {
+    private static final Pattern PROPERTY_REFERENCE = Pattern.compile("\\$\\{([^}]+)\\}");
+
+    // files of the features and bundles, resolved in batches
+    private final Map<Object, File> resolvedArtifacts = new HashMap<>();
+
+    // manifests of the dependencies, shared by all the executions of the build
+    private ManifestCache manifestCache;
+
+    protected void executeGoal() throws MojoExecutionException, MojoFailureException {
         try {
             this.dependencyHelper = DependencyHelperFactory.createDependencyHelper(this.container, this.project, this.mavenSession, getLog());
             this.dependencyHelper.getDependencies(project, includeTransitiveDependency);
@@ -321,50 +356,246 @@ public class GenerateDescriptorMojo extends MojoSupport {
         } catch (Exception e) {
             getLog().error(e.getMessage());
             throw new MojoExecutionException("Unable to create features.xml file: " + e, e);
+        } finally {
+            if (manifestCache != null) {
+                getLog().debug("Manifest cache: " + manifestCache.getHits() + " hits, "
+                        + manifestCache.getMisses() + " misses since the beginning of the build");
+            }
+            if (versionsCache != null) {
+                getLog().debug("Dependency versions cache: " + versionsCache.getHits() + " hits, "
+                        + versionsCache.getMisses() + " misses since the beginning of the build");
+                if (versionRangesCacheFile != null) {
+                    try {
+                        versionsCache.save(versionRangesCacheFile);
+                    } catch (IOException e) {
+                        getLog().warn("Unable to save dependency versions cache to " + versionRangesCacheFile, e);
+                    }
+                }
+            }
         }
     }
 
 	private MavenProject resolveProject(final Object artifact) throws MojoExecutionException {
-		MavenProject resolvedProject = project;
-		if (includeTransitiveVersionRanges) {
-			resolvedProject = resolvedProjects.get(artifact);
-			if (resolvedProject == null) {
-				final ProjectBuildingRequest request = new DefaultProjectBuildingRequest();
-				
-				// Fixes KARAF-4626; if the system properties are not transferred to the request, 
-				// test-feature-use-version-range-transfer-properties will fail
-				request.setSystemProperties(System.getProperties());
-				
-				request.setResolveDependencies(true);
-				request.setRemoteRepositories(project.getPluginArtifactRepositories());
-				request.setLocalRepository(localRepo);
-				request.setProfiles(new ArrayList<>(mavenSession.getRequest().getProfiles()));
-				request.setActiveProfileIds(new ArrayList<>(mavenSession.getRequest().getActiveProfiles()));
-				dependencyHelper.setRepositorySession(request);
-				final Artifact pomArtifact = repoSystem.createArtifact(dependencyHelper.getGroupId(artifact),
-						dependencyHelper.getArtifactId(artifact), dependencyHelper.getBaseVersion(artifact), "pom");
-				try {
-					resolvedProject = mavenProjectBuilder.build(pomArtifact, request).getProject();
-					resolvedProjects.put(pomArtifact, resolvedProject);
-				} catch (final ProjectBuildingException e) {
-					throw new MojoExecutionException(
-							format("Maven-project could not be built for artifact %s", pomArtifact), e);
+		final ProjectBuildingRequest request = new DefaultProjectBuildingRequest();
+
+		// Fixes KARAF-4626; if the system properties are not transferred to the request, 
+		// test-feature-use-version-range-transfer-properties will fail
+		request.setSystemProperties(System.getProperties());
+
+		request.setResolveDependencies(true);
+		request.setRemoteRepositories(project.getPluginArtifactRepositories());
+		request.setLocalRepository(localRepo);
+		request.setProfiles(new ArrayList<>(mavenSession.getRequest().getProfiles()));
+		request.setActiveProfileIds(new ArrayList<>(mavenSession.getRequest().getActiveProfiles()));
+		dependencyHelper.setRepositorySession(request);
+		final Artifact pomArtifact = createPomArtifact(artifact);
+		try {
+			return mavenProjectBuilder.build(pomArtifact, request).getProject();
+		} catch (final ProjectBuildingException e) {
+			throw new MojoExecutionException(
+					format("Maven-project could not be built for artifact %s", pomArtifact), e);
+		}
+	}
+
+	/**
+	 * Get the dependency versions declared by the given parent artifact, or by the project if transitive version
+	 * ranges are not included.  The versions declared by a POM are looked up by its checksum in the versions
+	 * cache before building its project model.
+	 */
+	private Map<String, String> getDeclaredVersions(final Object parent) throws MojoExecutionException {
+		final String id = includeTransitiveVersionRanges
+				? format("%s:%s:pom:%s", dependencyHelper.getGroupId(parent), dependencyHelper.getArtifactId(parent),
+						dependencyHelper.getBaseVersion(parent))
+				: "";
+		Map<String, String> versions = declaredVersions.get(id);
+		if (versions != null) {
+			return versions;
+		}
+		if (!includeTransitiveVersionRanges) {
+			versions = toDeclaredVersions(project);
+			declaredVersions.put(id, versions);
+			return versions;
+		}
+
+		if (versionsCache == null) {
+			versionsCache = DependencyVersionsCache.shared(mavenSession.getRequest());
+			if (versionRangesCacheFile != null) {
+				versionsCache.load(versionRangesCacheFile);
+			}
+		}
+		String checksum = null;
+		// only look in the local repository, building the project model resolves the POM anyway
+		final File pom = new File(localRepo.getBasedir(), localRepo.pathOf(createPomArtifact(parent)));
+		if (pom.isFile()) {
+			try {
+				checksum = IoUtils.sha1(pom) + ":" + getModelContext();
+				versions = versionsCache.get(checksum);
+			} catch (IOException e) {
+				getLog().debug("Unable to compute the checksum of " + id, e);
+			}
+		}
+		if (versions == null) {
+			final MavenProject parentProject = resolveProject(parent);
+			versions = toDeclaredVersions(parentProject);
+			if (checksum != null) {
+				versions = versionsCache.put(checksum, versions, isReproducible(parentProject));
+			}
+		}
+		declaredVersions.put(id, versions);
+		return versions;
+	}
+
+	private Artifact createPomArtifact(final Object artifact) {
+		return repoSystem.createArtifact(dependencyHelper.getGroupId(artifact),
+				dependencyHelper.getArtifactId(artifact), dependencyHelper.getBaseVersion(artifact), "pom");
+	}
+
+	/**
+	 * Compute a checksum of what may change a project model besides its POMs: the profiles and properties given
+	 * on the command line, the profiles of the settings, and the JDK and OS used to activate profiles.
+	 */
+	private String getModelContext() throws IOException {
+		if (modelContext == null) {
+			final MavenExecutionRequest request = mavenSession.getRequest();
+			final StringBuilder sb = new StringBuilder();
+			sb.append("active=").append(request.getActiveProfiles()).append('\n');
+			sb.append("inactive=").append(request.getInactiveProfiles()).append('\n');
+			sb.append("user=").append(new TreeMap<>(request.getUserProperties())).append('\n');
+			for (final Profile profile : request.getProfiles()) {
+				sb.append("settings=").append(profile.getId()).append(new TreeMap<>(profile.getProperties())).append('\n');
+			}
+			for (final String name : new String[] { "java.version", "os.name", "os.arch", "os.version" }) {
+				sb.append(name).append('=').append(System.getProperty(name)).append('\n');
+			}
+			try {
+				final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+				modelContext = IoUtils.toHex(digest.digest(sb.toString().getBytes(StandardCharsets.UTF_8)));
+			} catch (NoSuchAlgorithmException e) {
+				throw new IOException(e);
+			}
+		}
+		return modelContext;
+	}
+
+	/**
+	 * Check if a project model only depends on its POMs and on the {@link #getModelContext() model context}, so
+	 * that its dependency versions can be persisted.  Profiles activated by a property or a file, in the POMs or
+	 * in the settings, and versions interpolated from properties the POMs do not define, such as system
+	 * properties or environment variables, may give another model in another build.  The versions are only keyed
+	 * on the checksum of the artifact POM, which pins the versions of its parents and imported BOMs, so a model
+	 * with a SNAPSHOT parent or BOM, whose content may change under the same version, is not reproducible either.
+	 */
+	private boolean isReproducible(final MavenProject model) {
+		for (final Profile profile : mavenSession.getRequest().getProfiles()) {
+			if (isEnvironmentActivated(profile)) {
+				return false;
+			}
+		}
+		final List<Model> lineage = new ArrayList<>();
+		final Set<String> defined = new HashSet<>();
+		for (MavenProject p = model; p != null; p = p.getParent()) {
+			if (p.getParent() == null && p.getOriginalModel().getParent() != null) {
+				// the parent model is not known
+				return false;
+			}
+			if (isSnapshot(p.getVersion())) {
+				return false;
+			}
+			lineage.add(p.getOriginalModel());
+			defined.addAll(p.getOriginalModel().getProperties().stringPropertyNames());
+		}
+		for (final Model m : lineage) {
+			for (final Profile profile : m.getProfiles()) {
+				if (isEnvironmentActivated(profile)) {
+					return false;
 				}
 			}
+			final List<org.apache.maven.model.Dependency> dependencies = new ArrayList<>(m.getDependencies());
+			if (m.getDependencyManagement() != null) {
+				for (final org.apache.maven.model.Dependency dependency : m.getDependencyManagement().getDependencies()) {
+					if ("import".equals(dependency.getScope())) {
+						final String version = interpolate(dependency.getVersion(), model);
+						if (version == null || isSnapshot(version)) {
+							return false;
+						}
+					}
+				}
+				dependencies.addAll(m.getDependencyManagement().getDependencies());
+			}
+			for (final org.apache.maven.model.Dependency dependency : dependencies) {
+				if (dependency.getVersion() == null) {
+					continue;
+				}
+				final Matcher matcher = PROPERTY_REFERENCE.matcher(dependency.getVersion());
+				while (matcher.find()) {
+					final String name = matcher.group(1);
+					if (!defined.contains(name) && !name.startsWith("project.") && !name.startsWith("pom.")) {
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	private static boolean isSnapshot(final String version) {
+		return version != null && version.endsWith("SNAPSHOT");
+	}
+
+	/**
+	 * Interpolate the properties of a version with the properties of the given project.
+	 *
+	 * @return the interpolated version, or <code>null</code> if it refers to a property the project does not define.
+	 */
+	private static String interpolate(final String version, final MavenProject project) {
+		if (version == null) {
+			return null;
+		}
+		final Matcher matcher = PROPERTY_REFERENCE.matcher(version);
+		final StringBuffer sb = new StringBuffer();
+		while (matcher.find()) {
+			final String name = matcher.group(1);
+			final String value;
+			if (name.equals("project.version") || name.equals("pom.version")) {
+				value = project.getVersion();
+			} else if (name.equals("project.parent.version")) {
+				value = project.getParent() != null ? project.getParent().getVersion() : null;
+			} else {
+				value = project.getProperties().getProperty(name);
+			}
+			if (value == null) {
+				return null;
+			}
+			matcher.appendReplacement(sb, Matcher.quoteReplacement(value));
+		}
+		matcher.appendTail(sb);
+		return sb.toString();
+	}
+
+	private static boolean isEnvironmentActivated(final Profile profile) {
+		final Activation activation = profile.getActivation();
+		return activation != null && (activation.getProperty() != null || activation.getFile() != null);
+	}
+
+	private static Map<String, String> toDeclaredVersions(final MavenProject project) {
+		final Map<String, String> versions = new HashMap<>();
+		for (final org.apache.maven.model.Dependency dependency : project.getDependencies()) {
+			final String key = DependencyVersionsCache.key(dependency.getGroupId(), dependency.getArtifactId());
+			// the first declaration wins
+			if (dependency.getVersion() != null && !versions.containsKey(key)) {
+				versions.put(key, dependency.getVersion());
+			}
 		}
-		return resolvedProject;
+		return versions;
 	}
 
 	private String getVersionOrRange(final Object parent, final Object artifact) throws MojoExecutionException {
 		String versionOrRange = dependencyHelper.getBaseVersion(artifact);
 		if (useVersionRange) {
-			for (final org.apache.maven.model.Dependency dependency : resolveProject(parent).getDependencies()) {
-
-				if (dependency.getGroupId().equals(dependencyHelper.getGroupId(artifact))
-						&& dependency.getArtifactId().equals(dependencyHelper.getArtifactId(artifact))) {
-					versionOrRange = dependency.getVersion();
-					break;
-				}
+			final String declared = getDeclaredVersions(parent).get(DependencyVersionsCache.key(
+					dependencyHelper.getGroupId(artifact), dependencyHelper.getArtifactId(artifact)));
+			if (declared != null) {
+				versionOrRange = declared;
 			}
 		}
 		return versionOrRange;
@@ -421,12 +652,27 @@ public class GenerateDescriptorMojo extends MojoSupport {
         }
         boolean needWrap = false;
 
+        // Hash indexes of the model, as aggregated descriptors may contain thousands of features and bundles
+        IndexedFeatures indexedFeatures = new IndexedFeatures(features);
+        IndexedFeatures.IndexedFeature primaryFeature = new IndexedFeatures.IndexedFeature(feature);
+
         // First pass to look for features
         // Track other features we depend on and their repositories (we track repositories instead of building them from
         // the feature's Maven artifact to allow for multi-feature repositories)
         // TODO Initialise the repositories from the existing feature file if any
         Map<Dependency, Feature> otherFeatures = new HashMap<>();
         Map<Feature, String> featureRepositories = new HashMap<Feature, String>();
+        // Resolve the features and bundles used by both passes at once
+        List<Object> artifacts = new ArrayList<>();
+        for (final LocalDependency entry : localDependencies) {
+            Object artifact = entry.getArtifact();
+            if (!excludedArtifactIds.contains(this.dependencyHelper.getArtifactId(artifact))
+                    && (isFeaturesArtifact(artifact)
+                        || addBundlesToPrimaryFeature && !this.dependencyHelper.isArtifactAFeature(artifact))) {
+                artifacts.add(artifact);
+            }
+        }
+        resolveAll(artifacts);
         for (final LocalDependency entry : localDependencies) {
             Object artifact = entry.getArtifact();
 
@@ -434,12 +680,13 @@ public class GenerateDescriptorMojo extends MojoSupport {
                 continue;
             }
 
-            processFeatureArtifact(features, feature, otherFeatures, featureRepositories, artifact, entry.getParent(),
-                    true);
+            processFeatureArtifact(indexedFeatures, primaryFeature, otherFeatures, featureRepositories, artifact,
+                    entry.getParent(), true);
         }
 
         // Second pass to look for bundles
         if (addBundlesToPrimaryFeature) {
+            FeatureBundleIndex bundleIndex = new FeatureBundleIndex(otherFeatures);
             for (final LocalDependency entry : localDependencies) {
                 Object artifact = entry.getArtifact();
 
@@ -449,30 +696,24 @@ public class GenerateDescriptorMojo extends MojoSupport {
 
                 if (!this.dependencyHelper.isArtifactAFeature(artifact)) {
                     String bundleName = this.dependencyHelper.artifactToMvn(artifact, getVersionOrRange(entry.getParent(), artifact));
-                    File bundleFile = this.dependencyHelper.resolve(artifact, getLog());
-                    Manifest manifest = getManifest(bundleFile);
+                    File bundleFile = resolvedArtifacts.get(artifact);
+                    Map<String, String> headers = getHeaders(bundleFile);
 
-                    if (manifest == null || !ManifestUtils.isBundle(getManifest(bundleFile))) {
+                    if (headers == null || ManifestUtils.getHeader(Constants.BUNDLE_SYMBOLICNAME, headers) == null) {
                         bundleName = "wrap:" + bundleName;
                         needWrap = true;
                     }
 
-                    Bundle bundle = null;
-                    for (Bundle b : feature.getBundle()) {
-                        if (bundleName.equals(b.getLocation())) {
-                            bundle = b;
-                            break;
-                        }
-                    }
+                    Bundle bundle = primaryFeature.getBundle(bundleName);
                     if (bundle == null) {
                         bundle = objectFactory.createBundle();
                         bundle.setLocation(bundleName);
                         // Check the features this feature depends on don't already contain the dependency
                         // TODO Perhaps only for transitive dependencies?
                         boolean includedTransitively =
-                            simplifyBundleDependencies && isBundleIncludedTransitively(feature, otherFeatures, bundle);
+                            simplifyBundleDependencies && bundleIndex.isIncludedTransitively(feature, bundle);
                         if (!includedTransitively && (!"provided".equals(entry.getScope()) || !ignoreScopeProvided)) {
-                            feature.getBundle().add(bundle);
+                            primaryFeature.addBundle(bundle);
                         }
                     }
                     if ("runtime".equals(entry.getScope())) {
@@ -493,18 +734,18 @@ public class GenerateDescriptorMojo extends MojoSupport {
             feature.getFeature().add(wrapDependency);
         }
         
-        if ((!feature.getBundle().isEmpty() || !feature.getFeature().isEmpty()) && !features.getFeature().contains(feature)) {
-            features.getFeature().add(feature);
+        if ((!feature.getBundle().isEmpty() || !feature.getFeature().isEmpty()) && !indexedFeatures.containsFeature(feature)) {
+            indexedFeatures.addFeature(feature);
         }
 
         // Add any missing repositories for the included features
         for (Feature includedFeature : features.getFeature()) {
             for (Dependency dependency : includedFeature.getFeature()) {
                 Feature dependedFeature = otherFeatures.get(dependency);
-                if (dependedFeature != null && !features.getFeature().contains(dependedFeature)) {
+                if (dependedFeature != null && !indexedFeatures.containsFeature(dependedFeature)) {
                     String repository = featureRepositories.get(dependedFeature);
-                    if (repository != null && !features.getRepository().contains(repository)) {
-                        features.getRepository().add(repository);
+                    if (repository != null) {
+                        indexedFeatures.addRepository(repository);
                     }
                 }
             }
@@ -519,32 +760,39 @@ public class GenerateDescriptorMojo extends MojoSupport {
         getLog().info("...done!");
     }
 
-    private void processFeatureArtifact(Features features, Feature feature, Map<Dependency, Feature> otherFeatures,
+    private void processFeatureArtifact(IndexedFeatures features, IndexedFeatures.IndexedFeature feature,
+                                        Map<Dependency, Feature> otherFeatures,
                                         Map<Feature, String> featureRepositories,
                                         Object artifact, Object parent, boolean add)
             throws MojoExecutionException, XMLStreamException, JAXBException, IOException {
-        if (this.dependencyHelper.isArtifactAFeature(artifact) && FEATURE_CLASSIFIER.equals(
-                this.dependencyHelper.getClassifier(artifact))) {
-            File featuresFile = this.dependencyHelper.resolve(artifact, getLog());
+        if (isFeaturesArtifact(artifact)) {
+            File featuresFile = resolvedArtifacts.get(artifact);
             if (featuresFile == null || !featuresFile.exists()) {
                 throw new MojoExecutionException(
                         "Cannot locate file for feature: " + artifact + " at " + featuresFile);
             }
             Features includedFeatures = readFeaturesFile(featuresFile);
+            List<Object> repositories = new ArrayList<>();
+            List<Object> repositoryFeatures = new ArrayList<>();
             for (String repository : includedFeatures.getRepository()) {
-                processFeatureArtifact(features, feature, otherFeatures, featureRepositories,
-                        new DefaultArtifact(MavenUtil.mvnToAether(repository)), parent, false);
+                Object repositoryArtifact = new DefaultArtifact(MavenUtil.mvnToAether(repository));
+                repositories.add(repositoryArtifact);
+                if (isFeaturesArtifact(repositoryArtifact)) {
+                    repositoryFeatures.add(repositoryArtifact);
+                }
+            }
+            resolveAll(repositoryFeatures);
+            for (Object repository : repositories) {
+                processFeatureArtifact(features, feature, otherFeatures, featureRepositories, repository, parent, false);
             }
             for (Feature includedFeature : includedFeatures.getFeature()) {
                 Dependency dependency = new Dependency(includedFeature.getName(), includedFeature.getVersion());
                 // We musn't de-duplicate here, we may have seen a feature in !add mode
                 otherFeatures.put(dependency, includedFeature);
                 if (add) {
-                    if (!feature.getFeature().contains(dependency)) {
-                        feature.getFeature().add(dependency);
-                    }
+                    feature.addDependency(dependency);
                     if (aggregateFeatures) {
-                        features.getFeature().add(includedFeature);
+                        features.addFeature(includedFeature);
                     }
                 }
                 if (!featureRepositories.containsKey(includedFeature)) {
@@ -555,50 +803,51 @@ public class GenerateDescriptorMojo extends MojoSupport {
         }
     }
 
-    private boolean isBundleIncludedTransitively(Feature feature, Map<Dependency, Feature> otherFeatures,
-                                                 Bundle bundle) {
-        for (Dependency dependency : feature.getFeature()) {
-            Feature otherFeature = otherFeatures.get(dependency);
-            if (otherFeature != null) {
-                if (otherFeature.getBundle().contains(bundle) || isBundleIncludedTransitively(otherFeature,
-                    otherFeatures, bundle)) {
-                    return true;
-                }
+    private boolean isFeaturesArtifact(Object artifact) {
+        return this.dependencyHelper.isArtifactAFeature(artifact)
+                && FEATURE_CLASSIFIER.equals(this.dependencyHelper.getClassifier(artifact));
+    }
+
+    /**
+     * Resolve the given artifacts which have not been resolved yet in a single batch.
+     */
+    private void resolveAll(Collection<Object> artifacts) {
+        Set<Object> unresolved = new LinkedHashSet<>();
+        for (Object artifact : artifacts) {
+            if (!resolvedArtifacts.containsKey(artifact)) {
+                unresolved.add(artifact);
             }
         }
-        return false;
+        resolvedArtifacts.putAll(this.dependencyHelper.resolveAll(unresolved, getLog()));
     }
 
     /**
-     * Extract the MANIFEST from the give file.
+     * Extract the MANIFEST main attributes from the give file.  Manifests are cached for the whole build, as
+     * the same dependencies usually show up in most modules of a reactor.
      */
 
-    private Manifest getManifest(File file) throws IOException {
-        InputStream is;
-        try {
-            is = new BufferedInputStream(new FileInputStream(file));
-        } catch (Exception e) {
-            getLog().warn("Error while opening artifact", e);
+    private Map<String, String> getHeaders(File file) throws IOException {
+        if (file == null || !file.isFile()) {
+            getLog().warn("Error while opening artifact " + file);
             return null;
         }
-
-        try {
-            is.mark(256 * 1024);
-            JarInputStream jar = new JarInputStream(is);
-            Manifest m = jar.getManifest();
-            if (m == null) {
-                getLog().warn("Manifest not present in the first entry of the zip - " + file.getName());
-            }
-            jar.close();
-            return m;
-        } finally {
-            // just in case when we did not open bundle
-            is.close();
+        if (manifestCache == null) {
+            manifestCache = ManifestCache.shared(mavenSession != null ? mavenSession.getRequest() : this);
         }
+        Map<String, String> headers = manifestCache.getHeaders(file);
+        if (headers.isEmpty()) {
+            getLog().warn("Manifest not present in the zip - " + file.getName());
+            return null;
+        }
+        return headers;
     }
 
     private Features readFeaturesFile(File featuresFile) throws XMLStreamException, JAXBException, IOException {
-        return JaxbUtil.unmarshal(featuresFile.toURI().toASCIIString(), false);
+        try (Instrumentation.Span span = Instrumentation.start(Instrumentation.Kind.DESCRIPTOR_PARSING, featuresFile.getPath())) {
+            final Features features = JaxbUtil.unmarshal(featuresFile.toURI().toASCIIString(), false);
+            span.setSize(features.getFeature().size());
+            return features;
+        }
     }
 
     public void setLog(Log log) {
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.tooling.features;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.karaf.features.internal.model.Bundle;
+import org.apache.karaf.features.internal.model.Dependency;
+import org.apache.karaf.features.internal.model.Feature;
+import org.apache.karaf.features.internal.model.Features;
+
+/**
+ * <p>Hash indexes kept alongside a features repository model, so that checking whether it already contains a
+ * feature, repository, dependency or bundle does not require scanning the JAXB lists.</p>
+ *
+ * <p>Elements are still appended to the lists of the model, which keeps the order of the generated descriptor.
+ * The lists must only be modified through the indexes once these have been created.</p>
+ */
+public class IndexedFeatures {
+
+    private final Features features;
+    private final Set<Feature> featureSet = new HashSet<>();
+    private final Set<String> repositorySet = new HashSet<>();
+
+    public IndexedFeatures(Features features) {
+        this.features = features;
+        featureSet.addAll(features.getFeature());
+        repositorySet.addAll(features.getRepository());
+    }
+
+    public Features getFeatures() {
+        return features;
+    }
+
+    public boolean containsFeature(Feature feature) {
+        return featureSet.contains(feature);
+    }
+
+    public void addFeature(Feature feature) {
+        features.getFeature().add(feature);
+        featureSet.add(feature);
+    }
+
+    /**
+     * Add a repository unless it is already referenced.
+     *
+     * @param repository the repository url
+     */
+    public void addRepository(String repository) {
+        if (repositorySet.add(repository)) {
+            features.getRepository().add(repository);
+        }
+    }
+
+    /**
+     * Hash indexes of the dependencies and bundles of a feature.
+     */
+    public static class IndexedFeature {
+
+        private final Feature feature;
+        private final Set<Dependency> dependencySet = new HashSet<>();
+        private final Map<String, Bundle> bundleByLocation = new HashMap<>();
+
+        public IndexedFeature(Feature feature) {
+            this.feature = feature;
+            dependencySet.addAll(feature.getFeature());
+            for (Bundle bundle : feature.getBundle()) {
+                index(bundle);
+            }
+        }
+
+        public Feature getFeature() {
+            return feature;
+        }
+
+        /**
+         * Add a dependency unless the feature already depends on it.
+         *
+         * @param dependency the feature dependency
+         */
+        public void addDependency(Dependency dependency) {
+            if (dependencySet.add(dependency)) {
+                feature.getFeature().add(dependency);
+            }
+        }
+
+        /**
+         * @param location the bundle location
+         * @return the first bundle of the feature with the given location, or <code>null</code>
+         */
+        public Bundle getBundle(String location) {
+            return bundleByLocation.get(location);
+        }
+
+        public void addBundle(Bundle bundle) {
+            feature.getBundle().add(bundle);
+            index(bundle);
+        }
+
+        private void index(Bundle bundle) {
+            if (bundle.getLocation() != null && !bundleByLocation.containsKey(bundle.getLocation())) {
+                bundleByLocation.put(bundle.getLocation(), bundle);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.tooling.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * <p>A {@link Log} which keeps messages in memory until they are {@link #flush(Log) flushed} to another log.</p>
+ *
+ * <p>This is used when work is done concurrently, so that the messages of each unit of work stay grouped
+ * and come out in a deterministic order.</p>
+ */
+public class BufferedLog implements Log {
+
+    private enum Level {
+        DEBUG, INFO, WARN, ERROR
+    }
+
+    private static class Entry {
+        private final Level level;
+        private final CharSequence message;
+        private final Throwable error;
+
+        private Entry(Level level, CharSequence message, Throwable error) {
+            this.level = level;
+            this.message = message;
+            this.error = error;
+        }
+    }
+
+    private final Log target;
+    private final List<Entry> entries = new ArrayList<>();
+
+    /**
+     * @param target the log used to decide which levels are enabled
+     */
+    public BufferedLog(Log target) {
+        this.target = target;
+    }
+
+    /**
+     * Write all buffered messages to the given log and clear the buffer.
+     *
+     * @param log the log to write to
+     */
+    public synchronized void flush(Log log) {
+        for (Entry entry : entries) {
+            switch (entry.level) {
+            case DEBUG:
+                if (entry.error == null) {
+                    log.debug(entry.message);
+                } else if (entry.message == null) {
+                    log.debug(entry.error);
+                } else {
+                    log.debug(entry.message, entry.error);
+                }
+                break;
+            case INFO:
+                if (entry.error == null) {
+                    log.info(entry.message);
+                } else if (entry.message == null) {
+                    log.info(entry.error);
+                } else {
+                    log.info(entry.message, entry.error);
+                }
+                break;
+            case WARN:
+                if (entry.error == null) {
+                    log.warn(entry.message);
+                } else if (entry.message == null) {
+                    log.warn(entry.error);
+                } else {
+                    log.warn(entry.message, entry.error);
+                }
+                break;
+            case ERROR:
+                if (entry.error == null) {
+                    log.error(entry.message);
+                } else if (entry.message == null) {
+                    log.error(entry.error);
+                } else {
+                    log.error(entry.message, entry.error);
+                }
+                break;
+            }
+        }
+        entries.clear();
+    }
+
+    private synchronized void add(Level level, CharSequence message, Throwable error) {
+        entries.add(new Entry(level, message, error));
+    }
+
+    @Override
+    public boolean isDebugEnabled() {
+        return target.isDebugEnabled();
+    }
+
+    @Override
+    public void debug(CharSequence content) {
+        if (isDebugEnabled()) {
+            add(Level.DEBUG, content, null);
+        }
+    }
+
+    @Override
+    public void debug(CharSequence content, Throwable error) {
+        if (isDebugEnabled()) {
+            add(Level.DEBUG, content, error);
+        }
+    }
+
+    @Override
+    public void debug(Throwable error) {
+        if (isDebugEnabled()) {
+            add(Level.DEBUG, null, error);
+        }
+    }
+
+    @Override
+    public boolean isInfoEnabled() {
+        return target.isInfoEnabled();
+    }
+
+    @Override
+    public void info(CharSequence content) {
+        add(Level.INFO, content, null);
+    }
+
+    @Override
+    public void info(CharSequence content, Throwable error) {
+        add(Level.INFO, content, error);
+    }
+
+    @Override
+    public void info(Throwable error) {
+        add(Level.INFO, null, error);
+    }
+
+    @Override
+    public boolean isWarnEnabled() {
+        return target.isWarnEnabled();
+    }
+
+    @Override
+    public void warn(CharSequence content) {
+        add(Level.WARN, content, null);
+    }
+
+    @Override
+    public void warn(CharSequence content, Throwable error) {
+        add(Level.WARN, content, error);
+    }
+
+    @Override
+    public void warn(Throwable error) {
+        add(Level.WARN, null, error);
+    }
+
+    @Override
+    public boolean isErrorEnabled() {
+        return target.isErrorEnabled();
+    }
+
+    @Override
+    public void error(CharSequence content) {
+        add(Level.ERROR, content, null);
+    }
+
+    @Override
+    public void error(CharSequence content, Throwable error) {
+        add(Level.ERROR, content, error);
+    }
+
+    @Override
+    public void error(Throwable error) {
+        add(Level.ERROR, null, error);
+    }
+}
@@ -47,8 +47,11 @@ import org.sonatype.aether.util.graph.transformer.JavaEffectiveScopeCalculator;
 import java.io.File;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static java.lang.String.format;
@@ -114,7 +117,7 @@ public class Dependency30Helper implements DependencyHelper {
     }
 
     private DependencyNode getDependencyTree(Artifact artifact) throws MojoExecutionException {
-        try {
+        try (Instrumentation.Span span = Instrumentation.start("collect dependency tree")) {
             CollectRequest collectRequest = new CollectRequest(new Dependency(artifact, "compile"), null, projectRepositories);
             DefaultRepositorySystemSession session = new DefaultRepositorySystemSession(repositorySystemSession);
             session.setDependencySelector(new AndDependencySelector(new OptionalDependencySelector(),
@@ -302,28 +305,81 @@ public class Dependency30Helper implements DependencyHelper {
     }
 
     @Override
-    public File resolve(Object artifact, Log log) {
-        ArtifactRequest request = new ArtifactRequest();
-        request.setArtifact((Artifact) artifact);
-        request.setRepositories(projectRepositories);
+    public Map<Object, File> resolveAll(Collection<?> artifacts, Log log) {
+        Map<Object, File> files = new LinkedHashMap<>();
+        if (artifacts.isEmpty()) {
+            return files;
+        }
+        List<ArtifactRequest> requests = new ArrayList<>();
+        // the coordinates of all the artifacts, as the batch is recorded as a single span
+        StringBuilder coordinates = new StringBuilder();
+        for (Object artifact : artifacts) {
+            if (coordinates.length() > 0) {
+                coordinates.append(", ");
+            }
+            coordinates.append(artifact);
+            ArtifactRequest request = new ArtifactRequest();
+            request.setArtifact((Artifact) artifact);
+            request.setRepositories(projectRepositories);
+            requests.add(request);
+        }
 
-        log.debug("Resolving artifact " + artifact + " from " + projectRepositories);
+        log.debug("Resolving artifacts " + artifacts + " from " + projectRepositories);
 
-        ArtifactResult result;
-        try {
-            result = repositorySystem.resolveArtifact(repositorySystemSession, request);
-        } catch (ArtifactResolutionException e) {
-            log.warn("Could not resolve " + artifact, e);
-            return null;
+        List<ArtifactResult> results;
+        try (Instrumentation.Span span = Instrumentation.start(Instrumentation.Kind.ARTIFACT_RESOLUTION, coordinates.toString())) {
+            try {
+                results = repositorySystem.resolveArtifacts(repositorySystemSession, requests);
+            } catch (ArtifactResolutionException e) {
+                // the artifacts which could be resolved are still available
+                results = e.getResults();
+            }
+            long size = 0;
+            for (ArtifactResult result : results) {
+                if (result.isResolved()) {
+                    size += result.getArtifact().getFile().length();
+                }
+            }
+            span.setSize(size);
         }
 
-        log.debug("Resolved artifact " + artifact + " to " + result.getArtifact().getFile() + " from " + result.getRepository());
-
-        return result.getArtifact().getFile();
+        // results are in the same order as the requests
+        for (int i = 0; i < requests.size(); i++) {
+            Artifact artifact = requests.get(i).getArtifact();
+            ArtifactResult result = results.get(i);
+            if (result.isResolved()) {
+                log.debug("Resolved artifact " + artifact + " to " + result.getArtifact().getFile() + " from " + result.getRepository());
+                files.put(artifact, result.getArtifact().getFile());
+            } else if (result.getExceptions().isEmpty()) {
+                log.warn("Could not resolve " + artifact);
+            } else {
+                log.warn("Could not resolve " + artifact, result.getExceptions().get(0));
+            }
+        }
+        return files;
     }
 
     @Override
     public File resolveById(String id, Log log) throws MojoFailureException {
+        try {
+            return resolve(id, log);
+        } catch (ArtifactResolutionException e) {
+            log.warn("Could not resolve " + id, e);
+            throw new MojoFailureException(format("Couldn't resolve artifact %s", id), e);
+        }
+    }
+
+    @Override
+    public File resolveIfAvailable(String id, Log log) {
+        try {
+            return resolve(id, log);
+        } catch (ArtifactResolutionException e) {
+            log.debug("Could not resolve " + id + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private File resolve(String id, Log log) throws ArtifactResolutionException {
         if (id.startsWith("mvn:")) {
             if (id.contains("!")) {
                 id = id.substring(0, "mvn:".length()) + id.substring(id.indexOf("!") + 1);
@@ -340,11 +396,9 @@ public class Dependency30Helper implements DependencyHelper {
         log.debug("Resolving artifact " + id + " from " + projectRepositories);
 
         ArtifactResult result;
-        try {
+        try (Instrumentation.Span span = Instrumentation.start(Instrumentation.Kind.ARTIFACT_RESOLUTION, String.valueOf(request.getArtifact()))) {
             result = repositorySystem.resolveArtifact(repositorySystemSession, request);
-        } catch (ArtifactResolutionException e) {
-            log.warn("Could not resolve " + id, e);
-            throw new MojoFailureException(format("Couldn't resolve artifact %s", id), e);
+            span.setSize(result.getArtifact().getFile().length());
         }
 
         log.debug("Resolved artifact " + id + " to " + result.getArtifact().getFile() + " from " + result.getRepository());
@@ -27,6 +27,7 @@ import org.apache.maven.project.ProjectBuildingRequest;
 
 import java.io.File;
 import java.util.Collection;
+import java.util.Map;
 
 /**
  * <p>An interface for accessing available Aether subsystem (Sonatype for Maven 3.0.x or Eclipse for Maven 3.1.x)</p>
@@ -52,10 +53,27 @@ public interface DependencyHelper {
     
     public abstract String getClassifier(Object artifact);
 
-    public abstract File resolve(Object artifact, Log log);
+    /**
+     * Resolve a batch of Aether artifacts at once, so that the repository system can download them in parallel.
+     * Artifacts which can not be resolved are logged and are not part of the result.
+     *
+     * @param artifacts the Aether (Sonatype or Eclipse) artifacts to resolve.
+     * @param log the log used to report resolution failures.
+     * @return the resolved files, by artifact, in the order of the given artifacts.
+     */
+    public abstract Map<Object, File> resolveAll(Collection<?> artifacts, Log log);
 
     public abstract File resolveById(String id, Log log) throws MojoFailureException;
 
+    /**
+     * Resolve an artifact which may not be available, without reporting a warning when it can not be resolved.
+     *
+     * @param id the PAX URL mvn or Aether coordinates of the artifact.
+     * @param log the log used to report the resolution, at debug level.
+     * @return the file of the artifact, or <code>null</code> if it can not be resolved.
+     */
+    public abstract File resolveIfAvailable(String id, Log log);
+
     public abstract void setRepositorySession(ProjectBuildingRequest request) throws MojoExecutionException;
     
     /**
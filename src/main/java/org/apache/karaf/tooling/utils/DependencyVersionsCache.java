@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.tooling.utils;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.apache.karaf.tooling.utils.IoUtils.readString;
+import static org.apache.karaf.tooling.utils.IoUtils.writeString;
+
+/**
+ * <p>A cache of the dependency versions declared by Maven projects, as tables from
+ * <code>groupId:artifactId</code> to the declared version or range.</p>
+ *
+ * <p>Tables are keyed by a checksum of the POM they were computed from, so that building the project model
+ * can be avoided when the same POM shows up again.  A cache is shared by everything using the same owner, and
+ * may be persisted between builds.  Only the persistent tables are written to disk: tables depending on
+ * snapshot POMs are kept in memory only, as their parents may change without the POM itself changing.</p>
+ */
+public class DependencyVersionsCache {
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final Map<Object, DependencyVersionsCache> SHARED = new WeakHashMap<>();
+
+    private final Map<String, Map<String, String>> tables = new HashMap<>();
+    private final Set<String> persistent = new HashSet<>();
+    private final Set<File> loaded = new HashSet<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private boolean modified;
+
+    /**
+     * Get the cache shared by everything using the same owner, such as the Maven execution request.
+     *
+     * @param owner the object the cache is attached to
+     * @return the shared cache
+     */
+    public static DependencyVersionsCache shared(Object owner) {
+        synchronized (SHARED) {
+            DependencyVersionsCache cache = SHARED.get(owner);
+            if (cache == null) {
+                cache = new DependencyVersionsCache();
+                SHARED.put(owner, cache);
+            }
+            return cache;
+        }
+    }
+
+    public static String key(String groupId, String artifactId) {
+        return groupId + ":" + artifactId;
+    }
+
+    /**
+     * Get the dependency versions computed for a POM.
+     *
+     * @param checksum the checksum of the POM
+     * @return an unmodifiable table from {@link #key(String, String)} to version, or <code>null</code>
+     */
+    public synchronized Map<String, String> get(String checksum) {
+        Map<String, String> versions = tables.get(checksum);
+        if (versions != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return versions;
+    }
+
+    /**
+     * Store the dependency versions computed for a POM.
+     *
+     * @param checksum the checksum of the POM
+     * @param versions the table from {@link #key(String, String)} to version
+     * @param persist whether the table can be written to disk
+     * @return an unmodifiable copy of the table
+     */
+    public synchronized Map<String, String> put(String checksum, Map<String, String> versions, boolean persist) {
+        Map<String, String> copy = Collections.unmodifiableMap(new LinkedHashMap<>(versions));
+        tables.put(checksum, copy);
+        if (persist) {
+            persistent.add(checksum);
+            modified = true;
+        }
+        return copy;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Load the tables persisted in a file, unless this file has already been loaded.  A corrupted or outdated
+     * file is ignored.
+     *
+     * @param file the cache file
+     */
+    public synchronized void load(File file) {
+        if (!loaded.add(file) || !file.isFile()) {
+            return;
+        }
+        Map<String, Map<String, String>> read = new HashMap<>();
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (dis.readInt() != FORMAT_VERSION) {
+                return;
+            }
+            int count = dis.readInt();
+            for (int i = 0; i < count; i++) {
+                String checksum = readString(dis);
+                int nbVersions = dis.readInt();
+                Map<String, String> versions = new LinkedHashMap<>();
+                for (int j = 0; j < nbVersions; j++) {
+                    versions.put(readString(dis), readString(dis));
+                }
+                read.put(checksum, Collections.unmodifiableMap(versions));
+            }
+        } catch (IOException | RuntimeException e) {
+            return;
+        }
+        for (Map.Entry<String, Map<String, String>> entry : read.entrySet()) {
+            if (!tables.containsKey(entry.getKey())) {
+                tables.put(entry.getKey(), entry.getValue());
+                persistent.add(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Write the persistent tables to a file if they have been modified.
+     *
+     * @param file the cache file
+     * @throws IOException if the file can not be written
+     */
+    public synchronized void save(File file) throws IOException {
+        if (!modified) {
+            return;
+        }
+        IoUtils.writeAtomically(file, new IoUtils.ContentWriter() {
+            @Override
+            public void write(DataOutputStream dos) throws IOException {
+                dos.writeInt(FORMAT_VERSION);
+                dos.writeInt(persistent.size());
+                for (String checksum : persistent) {
+                    Map<String, String> versions = tables.get(checksum);
+                    writeString(dos, checksum);
+                    dos.writeInt(versions.size());
+                    for (Map.Entry<String, String> version : versions.entrySet()) {
+                        writeString(dos, version.getKey());
+                        writeString(dos, version.getValue());
+                    }
+                }
+            }
+        });
+        modified = false;
+    }
+
+}
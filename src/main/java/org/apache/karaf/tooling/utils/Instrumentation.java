@@ -0,0 +1,382 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.tooling.utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * <p>Instrumentation of the expensive phases of the plugin.</p>
+ *
+ * <p>Each phase is measured by a {@link Span}, which is committed as a JDK Flight Recorder event when running on a
+ * JVM supporting it.  As the plugin targets older JVMs, the event types are defined at runtime using
+ * <code>jdk.jfr.EventFactory</code> through reflection, and spans do nothing when it is not available.</p>
+ *
+ * <p>Spans can also be recorded in a {@link Trace}, written in the Chrome trace event format, which can be loaded
+ * in <code>chrome://tracing</code> or Perfetto.  A trace is attached to an owner living as long as the build, so the
+ * goals of all the modules of a build, including modules built in parallel, end up in the same timeline.  Spans are
+ * only recorded in the trace {@link #attach(Trace) attached} to the thread which starts them, so builds running in
+ * the same JVM do not record each other's spans.</p>
+ *
+ * <pre>
+ * try (Instrumentation.Span span = Instrumentation.start(Instrumentation.Kind.MANIFEST_READ, file.getName())) {
+ *     span.setSize(file.length());
+ *     ...
+ * }
+ * </pre>
+ */
+public class Instrumentation {
+
+    /**
+     * The instrumented phases, each one recorded as its own event type.  The size of the events of a given type is
+     * always in the same unit, so that they can be compared.
+     */
+    public enum Kind {
+        /** The size is the number of bytes of the resolved artifacts. */
+        ARTIFACT_RESOLUTION("ArtifactResolution", "Artifact Resolution"),
+        /** The size is the number of features of the descriptor. */
+        DESCRIPTOR_PARSING("DescriptorParsing", "Features Descriptor Parsing"),
+        /** The size is the number of bytes of the jar. */
+        MANIFEST_READ("ManifestRead", "Manifest Read"),
+        /** The size is the number of resolved resources. */
+        RESOLUTION("Resolution", "Resolver Run"),
+        /** The size is the number of bytes of the archive. */
+        ARCHIVE_WRITE("ArchiveWrite", "Archive Write"),
+        /** The size is the number of bytes copied. */
+        DIRECTORY_COPY("DirectoryCopy", "Directory Copy"),
+        PHASE("Phase", "Goal Phase");
+
+        private final String name;
+        private final String label;
+        private Object factory;
+
+        Kind(String name, String label) {
+            this.name = name;
+            this.label = label;
+        }
+    }
+
+    private static final String EVENT_PREFIX = "org.apache.karaf.tooling.";
+    private static final String CATEGORY = "Karaf Maven Plugin";
+
+    private static final long ORIGIN = System.nanoTime();
+    private static final Map<Object, Trace> TRACES = new WeakHashMap<>();
+    // inherited, so that the spans of the threads started by a goal end up in the trace of the goal
+    private static final InheritableThreadLocal<Trace> CURRENT = new InheritableThreadLocal<>();
+
+    private static final boolean JFR;
+    private static Method newEvent;
+    private static Method begin;
+    private static Method end;
+    private static Method shouldCommit;
+    private static Method set;
+    private static Method commit;
+
+    static {
+        boolean available;
+        try {
+            Class<?> factoryClass = Class.forName("jdk.jfr.EventFactory");
+            Class<?> eventClass = Class.forName("jdk.jfr.Event");
+            Class<?> annotationClass = Class.forName("jdk.jfr.AnnotationElement");
+            Class<?> descriptorClass = Class.forName("jdk.jfr.ValueDescriptor");
+            Constructor<?> annotation = annotationClass.getConstructor(Class.class, Object.class);
+            Constructor<?> descriptor = descriptorClass.getConstructor(Class.class, String.class, List.class);
+            Method create = factoryClass.getMethod("create", List.class, List.class);
+            List<?> fields = Arrays.asList(
+                    descriptor.newInstance(String.class, "subject",
+                            Collections.singletonList(annotation.newInstance(annotationType("jdk.jfr.Label"), "Subject"))),
+                    descriptor.newInstance(long.class, "size",
+                            Collections.singletonList(annotation.newInstance(annotationType("jdk.jfr.Label"), "Size"))));
+            for (Kind kind : Kind.values()) {
+                List<?> annotations = Arrays.asList(
+                        annotation.newInstance(annotationType("jdk.jfr.Name"), EVENT_PREFIX + kind.name),
+                        annotation.newInstance(annotationType("jdk.jfr.Label"), kind.label),
+                        annotation.newInstance(annotationType("jdk.jfr.Category"), new String[] { CATEGORY }));
+                kind.factory = create.invoke(null, annotations, fields);
+            }
+            newEvent = factoryClass.getMethod("newEvent");
+            begin = eventClass.getMethod("begin");
+            end = eventClass.getMethod("end");
+            shouldCommit = eventClass.getMethod("shouldCommit");
+            set = eventClass.getMethod("set", int.class, Object.class);
+            commit = eventClass.getMethod("commit");
+            available = true;
+        } catch (Throwable t) {
+            available = false;
+        }
+        JFR = available;
+    }
+
+    private Instrumentation() {
+        // hide the constructor
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Class<? extends Annotation> annotationType(String name) throws ClassNotFoundException {
+        return (Class<? extends Annotation>) Class.forName(name);
+    }
+
+    /**
+     * Get the trace shared by everything using the same owner, creating it if needed.  The trace lives until the
+     * owner is garbage collected, so the owner would usually be the Maven execution request.
+     *
+     * @param owner the object the trace is attached to
+     * @param file  the trace file, only used when the trace is created
+     * @return the shared trace
+     */
+    public static Trace trace(Object owner, File file) {
+        synchronized (TRACES) {
+            Trace trace = TRACES.get(owner);
+            if (trace == null) {
+                trace = new Trace(file);
+                TRACES.put(owner, trace);
+            }
+            return trace;
+        }
+    }
+
+    /**
+     * Record the spans started from then on by the current thread, and by the threads it creates, in the given trace.
+     *
+     * @param trace the trace, or <code>null</code> to stop recording the spans of the current thread
+     * @return the trace previously attached to the current thread, to be attached again once done
+     */
+    public static Trace attach(Trace trace) {
+        Trace previous = CURRENT.get();
+        if (trace != null) {
+            CURRENT.set(trace);
+        } else {
+            CURRENT.remove();
+        }
+        return previous;
+    }
+
+    /**
+     * Start measuring a phase of a goal.
+     *
+     * @param name the phase name
+     * @return the span, to be closed when the phase ends
+     */
+    public static Span start(String name) {
+        return new Span(Kind.PHASE, name);
+    }
+
+    /**
+     * Start measuring a phase.
+     *
+     * @param kind the phase
+     * @param subject what the phase works on, such as artifact coordinates, a file or a feature
+     * @return the span, to be closed when the phase ends
+     */
+    public static Span start(Kind kind, String subject) {
+        return new Span(kind, subject);
+    }
+
+    /**
+     * A measured phase.
+     */
+    public static class Span implements Closeable {
+
+        private final Kind kind;
+        private final String subject;
+        private final Object event;
+        private final Trace trace;
+        private final long start;
+        private long size = -1;
+        private boolean closed;
+
+        private Span(Kind kind, String subject) {
+            this.kind = kind;
+            this.subject = subject;
+            this.event = JFR ? begin(kind) : null;
+            this.trace = CURRENT.get();
+            this.start = trace != null ? System.nanoTime() : -1;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public String getSubject() {
+            return subject;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * @param size the size of what the phase produced or processed, in the unit of its {@link Kind}
+         */
+        public void setSize(long size) {
+            this.size = size;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (event != null) {
+                commit(event, subject, size);
+            }
+            if (trace != null) {
+                record(this, System.nanoTime());
+            }
+        }
+    }
+
+    private static void record(Span span, long end) {
+        Thread thread = Thread.currentThread();
+        StringBuilder sb = new StringBuilder();
+        String name = span.kind == Kind.PHASE ? span.subject : span.kind.label;
+        sb.append("{\"name\":").append(json(name))
+                .append(",\"cat\":").append(json(span.kind.name))
+                .append(",\"ph\":\"X\",\"pid\":1,\"tid\":").append(thread.getId())
+                .append(",\"ts\":").append((span.start - ORIGIN) / 1000)
+                .append(",\"dur\":").append((end - span.start) / 1000)
+                .append(",\"args\":{\"subject\":").append(json(span.subject));
+        if (span.size >= 0) {
+            sb.append(",\"size\":").append(span.size);
+        }
+        sb.append("}}");
+        span.trace.add(thread, sb.toString());
+    }
+
+    /**
+     * Spans recorded in the Chrome trace event format.  The trace is written incrementally using the JSON array
+     * format, whose closing bracket is optional, so that each span is only written once however many times the
+     * trace is flushed.
+     */
+    public static class Trace {
+
+        private final File file;
+        private final List<String> pending = new ArrayList<>();
+        private final Set<Long> threads = new HashSet<>();
+        private boolean started;
+
+        private Trace(File file) {
+            this.file = file;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        private synchronized void add(Thread thread, String event) {
+            if (threads.add(thread.getId())) {
+                pending.add("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":" + thread.getId()
+                        + ",\"args\":{\"name\":" + json(thread.getName()) + "}}");
+            }
+            pending.add(event);
+        }
+
+        /**
+         * Append the spans recorded since the last flush to the trace file, which is overwritten on the first flush.
+         *
+         * @throws IOException if the file can not be written
+         */
+        public synchronized void flush() throws IOException {
+            if (started && pending.isEmpty()) {
+                return;
+            }
+            File dir = file.getAbsoluteFile().getParentFile();
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Unable to create directory " + dir);
+            }
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(file, started), StandardCharsets.UTF_8)) {
+                for (String event : pending) {
+                    writer.write(started ? ",\n" : "[\n");
+                    writer.write(event);
+                    started = true;
+                }
+                if (!started) {
+                    writer.write("[\n");
+                    started = true;
+                }
+            }
+            pending.clear();
+        }
+    }
+
+    private static String json(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+            case '"':
+                sb.append("\\\"");
+                break;
+            case '\\':
+                sb.append("\\\\");
+                break;
+            default:
+                if (c < 0x20) {
+                    sb.append(String.format("\\u%04x", (int) c));
+                } else {
+                    sb.append(c);
+                }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private static Object begin(Kind kind) {
+        try {
+            Object event = newEvent.invoke(kind.factory);
+            begin.invoke(event);
+            return event;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static void commit(Object event, String subject, long size) {
+        try {
+            end.invoke(event);
+            if ((Boolean) shouldCommit.invoke(event)) {
+                set.invoke(event, 0, subject);
+                set.invoke(event, 1, size);
+                commit.invoke(event);
+            }
+        } catch (Exception e) {
+            // ignore, instrumentation must not break the build
+        }
+    }
+
+}
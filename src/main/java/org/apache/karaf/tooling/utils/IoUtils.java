@@ -18,6 +18,12 @@ package org.apache.karaf.tooling.utils;
 
 import java.io.*;
 import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 public class IoUtils {
 
@@ -40,6 +46,16 @@ public class IoUtils {
     public static void copyDirectory(final File srcDir, final File destDir) throws IOException {
         if (srcDir == null || !srcDir.exists())
             return;
+        try (Instrumentation.Span span = Instrumentation.start(Instrumentation.Kind.DIRECTORY_COPY, srcDir.getPath())) {
+            span.setSize(copyDirectoryRecursively(srcDir, destDir));
+        }
+    }
+
+    /**
+     * @return the number of bytes copied
+     */
+    private static long copyDirectoryRecursively(final File srcDir, final File destDir) throws IOException {
+        long size = 0;
         if (destDir == null || !destDir.exists())
             destDir.mkdirs();
         // recurse
@@ -62,11 +78,13 @@ public class IoUtils {
         for (final File srcFile : srcFiles) {
             final File dstFile = new File(destDir, srcFile.getName());
             if (srcFile.isDirectory()) {
-                copyDirectory(srcFile, dstFile);
+                size += copyDirectoryRecursively(srcFile, dstFile);
             } else {
                 copyFile(srcFile, dstFile);
+                size += dstFile.length();
             }
         }
+        return size;
     }
 
     public static void copyFile(final File srcFile, final File destFile) throws IOException {
@@ -118,4 +136,88 @@ public class IoUtils {
         }
     }
 
+    /**
+     * Compute the SHA-1 checksum of a file.
+     *
+     * @param file the file
+     * @return the checksum as an hexadecimal string
+     * @throws IOException if the file can not be read
+     */
+    public static String sha1(File file) throws IOException {
+        try (InputStream is = new FileInputStream(file)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] buffer = new byte[8192];
+            int len;
+            while ((len = is.read(buffer)) > 0) {
+                digest.update(buffer, 0, len);
+            }
+            return toHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    public static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes the content of a file.
+     */
+    public interface ContentWriter {
+        void write(DataOutputStream dos) throws IOException;
+    }
+
+    /**
+     * Write a file through a unique temporary file in the same directory, which is then renamed into place, so
+     * that readers never see a partially written file and concurrent writers, such as modules built in parallel
+     * saving the same cache, do not overwrite each other's temporary file.
+     *
+     * @param file the file to write
+     * @param writer the writer of the file content
+     * @throws IOException if the file can not be written
+     */
+    public static void writeAtomically(File file, ContentWriter writer) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("Unable to create directory " + dir);
+        }
+        File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+        try {
+            try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                writer.write(dos);
+            }
+            try {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Write a string of any length, unlike {@link DataOutput#writeUTF(String)} which is limited to 64k, which is
+     * not enough for some Export-Package headers.
+     */
+    public static void writeString(DataOutputStream dos, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        dos.writeInt(bytes.length);
+        dos.write(bytes);
+    }
+
+    /**
+     * Read a string written by {@link #writeString(DataOutputStream, String)}.
+     */
+    public static String readString(DataInputStream dis) throws IOException {
+        byte[] bytes = new byte[dis.readInt()];
+        dis.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
 }
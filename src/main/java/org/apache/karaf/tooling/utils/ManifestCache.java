@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.tooling.utils;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.apache.karaf.tooling.utils.IoUtils.readString;
+import static org.apache.karaf.tooling.utils.IoUtils.writeString;
+
+/**
+ * <p>An on-disk cache of the main attributes of jar manifests.</p>
+ *
+ * <p>Entries are keyed by the canonical path of the jar and are only considered valid if the size and the last
+ * modification time of the file did not change.  When hashing is enabled, the SHA-1 of the jar is recorded with
+ * its entry, so that an entry whose jar has only been touched, such as a bundle downloaded again, is revalidated
+ * instead of read again.  Jars are only hashed when they are read or revalidated, not on cache hits.
+ * The cache keeps at most {@code maxEntries} entries and evicts the least recently used ones.</p>
+ *
+ * <p>In-memory caches can also be shared by all the executions of a build using {@link #shared(Object)}.</p>
+ */
+public class ManifestCache {
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int SHARED_MAX_ENTRIES = 10000;
+
+    private static final Map<Object, ManifestCache> SHARED = new WeakHashMap<>();
+
+    private static class CachedEntry {
+        private final long size;
+        private final long lastModified;
+        private final String hash;
+        private final Map<String, String> headers;
+
+        private CachedEntry(long size, long lastModified, String hash, Map<String, String> headers) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+            this.headers = headers;
+        }
+    }
+
+    private final File cacheFile;
+    private final boolean useHash;
+    private final Map<String, CachedEntry> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private boolean modified;
+
+    /**
+     * @param cacheFile the file used to persist the cache, may be <code>null</code> for an in-memory cache
+     * @param maxEntries the maximum number of entries kept in the cache
+     * @param useHash whether entries whose jar modification time changed are revalidated against its SHA-1
+     */
+    public ManifestCache(File cacheFile, final int maxEntries, boolean useHash) {
+        this.cacheFile = cacheFile;
+        this.useHash = useHash;
+        this.entries = new LinkedHashMap<String, CachedEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedEntry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Get the in-memory cache shared by everything using the same owner.  The cache is released when the owner
+     * is garbage collected, so the owner would usually be an object living as long as the build, such as the
+     * Maven execution request.
+     *
+     * @param owner the object the cache is attached to
+     * @return the shared cache
+     */
+    public static ManifestCache shared(Object owner) {
+        synchronized (SHARED) {
+            ManifestCache cache = SHARED.get(owner);
+            if (cache == null) {
+                cache = new ManifestCache(null, SHARED_MAX_ENTRIES, false);
+                SHARED.put(owner, cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * Get the main attributes of the manifest of the given jar, reading it only if the cache does not contain
+     * a valid entry.  Jars without a manifest have no headers.
+     *
+     * @param file the jar file
+     * @return an unmodifiable map of the manifest main attributes
+     * @throws IOException if the jar can not be read
+     */
+    public Map<String, String> getHeaders(File file) throws IOException {
+        String key = file.getCanonicalPath();
+        long size = file.length();
+        long lastModified = file.lastModified();
+        CachedEntry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry != null && entry.size == size && entry.lastModified == lastModified) {
+                hits.incrementAndGet();
+                return entry.headers;
+            }
+        }
+        String hash = null;
+        if (useHash) {
+            hash = IoUtils.sha1(file);
+            if (entry != null && entry.size == size && hash.equals(entry.hash)) {
+                synchronized (this) {
+                    entries.put(key, new CachedEntry(size, lastModified, hash, entry.headers));
+                    modified = true;
+                }
+                hits.incrementAndGet();
+                return entry.headers;
+            }
+        }
+        misses.incrementAndGet();
+        Map<String, String> headers = Collections.unmodifiableMap(ManifestUtils.getHeaders(ManifestReader.read(file)));
+        synchronized (this) {
+            entries.put(key, new CachedEntry(size, lastModified, hash, headers));
+            modified = true;
+        }
+        return headers;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Load the cache content from its file, if any.  A corrupted or outdated file is ignored.
+     */
+    public synchronized void load() {
+        if (cacheFile == null || !cacheFile.isFile()) {
+            return;
+        }
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+            if (dis.readInt() != FORMAT_VERSION) {
+                return;
+            }
+            int count = dis.readInt();
+            for (int i = 0; i < count; i++) {
+                String key = readString(dis);
+                long size = dis.readLong();
+                long lastModified = dis.readLong();
+                String hash = readString(dis);
+                int nbHeaders = dis.readInt();
+                Map<String, String> headers = new LinkedHashMap<>();
+                for (int j = 0; j < nbHeaders; j++) {
+                    headers.put(readString(dis), readString(dis));
+                }
+                entries.put(key, new CachedEntry(size, lastModified, hash.isEmpty() ? null : hash,
+                        Collections.unmodifiableMap(headers)));
+            }
+        } catch (IOException | RuntimeException e) {
+            entries.clear();
+        }
+        modified = false;
+    }
+
+    /**
+     * Write the cache content to its file if it has been modified since it has been loaded.
+     *
+     * @throws IOException if the file can not be written
+     */
+    public synchronized void save() throws IOException {
+        if (cacheFile == null || !modified) {
+            return;
+        }
+        IoUtils.writeAtomically(cacheFile, new IoUtils.ContentWriter() {
+            @Override
+            public void write(DataOutputStream dos) throws IOException {
+                dos.writeInt(FORMAT_VERSION);
+                dos.writeInt(entries.size());
+                for (Map.Entry<String, CachedEntry> e : entries.entrySet()) {
+                    CachedEntry entry = e.getValue();
+                    writeString(dos, e.getKey());
+                    dos.writeLong(entry.size);
+                    dos.writeLong(entry.lastModified);
+                    writeString(dos, entry.hash != null ? entry.hash : "");
+                    dos.writeInt(entry.headers.size());
+                    for (Map.Entry<String, String> header : entry.headers.entrySet()) {
+                        writeString(dos, header.getKey());
+                        writeString(dos, header.getValue());
+                    }
+                }
+            }
+        });
+        modified = false;
+    }
+
+}
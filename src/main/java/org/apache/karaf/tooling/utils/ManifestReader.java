@@ -0,0 +1,233 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.tooling.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static java.util.jar.JarFile.MANIFEST_NAME;
+
+/**
+ * <p>Reads the manifest of jar files.</p>
+ *
+ * <p>When reading from a file, the zip central directory is located from the end of the file and scanned for the
+ * manifest entry, which is then read directly, so the cost does not depend on the size of the jar.  Archives which
+ * can not be handled this way (zip64, unusual compression methods) are read using {@link JarFile}.  Streams are read
+ * sequentially, stopping as soon as the manifest has been found.</p>
+ */
+public class ManifestReader {
+
+    private static final int LOC_SIG = 0x04034b50;
+    private static final int CEN_SIG = 0x02014b50;
+    private static final int END_SIG = 0x06054b50;
+    private static final int LOC_HDR = 30;
+    private static final int CEN_HDR = 46;
+    private static final int END_HDR = 22;
+    private static final int MAX_COMMENT = 0xffff;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+
+    private static final byte[] MANIFEST_NAME_BYTES = MANIFEST_NAME.getBytes(StandardCharsets.US_ASCII);
+
+    private ManifestReader() {
+        // hide the constructor
+    }
+
+    /**
+     * Read the manifest of the given jar file.
+     *
+     * @param file the jar file
+     * @return the manifest, or <code>null</code> if the file is not a jar or has no manifest
+     * @throws IOException if the file can not be read
+     */
+    public static Manifest read(File file) throws IOException {
+        byte[] data;
+        try (Instrumentation.Span span = Instrumentation.start(Instrumentation.Kind.MANIFEST_READ, file.getPath());
+             RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            span.setSize(file.length());
+            try {
+                data = readFromCentralDirectory(raf.getChannel());
+            } catch (UnsupportedArchiveException e) {
+                try (JarFile jar = new JarFile(file, false)) {
+                    return jar.getManifest();
+                }
+            }
+        }
+        return data != null ? new Manifest(new ByteArrayInputStream(data)) : null;
+    }
+
+    /**
+     * Read the manifest from a jar stream, wherever the manifest entry is located.
+     *
+     * @param is the jar content, which is not closed
+     * @return the manifest, or <code>null</code> if the stream has no manifest
+     * @throws IOException if the stream can not be read
+     */
+    public static Manifest read(InputStream is) throws IOException {
+        ZipInputStream zis = new ZipInputStream(is);
+        ZipEntry entry;
+        while ((entry = zis.getNextEntry()) != null) {
+            if (MANIFEST_NAME.equalsIgnoreCase(entry.getName())) {
+                return new Manifest(zis);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the content of the manifest entry, or <code>null</code> if there is none
+     * @throws UnsupportedArchiveException if the archive format is not supported
+     */
+    private static byte[] readFromCentralDirectory(FileChannel channel) throws IOException, UnsupportedArchiveException {
+        long size = channel.size();
+        if (size < END_HDR) {
+            return null;
+        }
+        // Locate the end of central directory record, which is followed by an optional comment
+        int tailLength = (int) Math.min(size, END_HDR + MAX_COMMENT);
+        ByteBuffer tail = read(channel, size - tailLength, tailLength);
+        int end = -1;
+        for (int i = tailLength - END_HDR; i >= 0; i--) {
+            if (tail.getInt(i) == END_SIG && i + END_HDR + (tail.getShort(i + 20) & 0xffff) == tailLength) {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) {
+            return null;
+        }
+        long cenSize = tail.getInt(end + 12) & 0xffffffffL;
+        long cenOffset = tail.getInt(end + 16) & 0xffffffffL;
+        if (cenSize == 0xffffffffL || cenOffset == 0xffffffffL || (tail.getShort(end + 10) & 0xffff) == 0xffff) {
+            throw new UnsupportedArchiveException("zip64");
+        }
+        long cenPosition = size - tailLength + end - cenSize;
+        // Non zero for archives with a prefix, such as self extracting archives
+        long base = cenPosition - cenOffset;
+        if (cenPosition < 0 || base < 0 || cenSize > Integer.MAX_VALUE) {
+            throw new UnsupportedArchiveException("invalid central directory");
+        }
+
+        ByteBuffer cen = read(channel, cenPosition, (int) cenSize);
+        int pos = 0;
+        while (pos + CEN_HDR <= cenSize && cen.getInt(pos) == CEN_SIG) {
+            int nameLength = cen.getShort(pos + 28) & 0xffff;
+            int extraLength = cen.getShort(pos + 30) & 0xffff;
+            int commentLength = cen.getShort(pos + 32) & 0xffff;
+            if (isManifest(cen, pos + CEN_HDR, nameLength)) {
+                int method = cen.getShort(pos + 10) & 0xffff;
+                long compressedSize = cen.getInt(pos + 20) & 0xffffffffL;
+                long uncompressedSize = cen.getInt(pos + 24) & 0xffffffffL;
+                long locOffset = cen.getInt(pos + 42) & 0xffffffffL;
+                if ((method != STORED && method != DEFLATED)
+                        || compressedSize > Integer.MAX_VALUE || uncompressedSize > Integer.MAX_VALUE) {
+                    throw new UnsupportedArchiveException("unsupported manifest entry");
+                }
+                ByteBuffer loc = read(channel, base + locOffset, LOC_HDR);
+                if (loc.getInt(0) != LOC_SIG) {
+                    throw new UnsupportedArchiveException("invalid local header");
+                }
+                long dataPosition = base + locOffset + LOC_HDR
+                        + (loc.getShort(26) & 0xffff) + (loc.getShort(28) & 0xffff);
+                byte[] data = read(channel, dataPosition, (int) compressedSize).array();
+                return method == STORED ? data : inflate(data, (int) uncompressedSize);
+            }
+            pos += CEN_HDR + nameLength + extraLength + commentLength;
+        }
+        return null;
+    }
+
+    private static boolean isManifest(ByteBuffer cen, int offset, int length) {
+        if (length != MANIFEST_NAME_BYTES.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            byte b = cen.get(offset + i);
+            if (b >= 'a' && b <= 'z') {
+                b -= 'a' - 'A';
+            }
+            if (b != MANIFEST_NAME_BYTES[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] inflate(byte[] data, int uncompressedSize) throws IOException {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data);
+            byte[] result = new byte[uncompressedSize];
+            int length = 0;
+            while (length < uncompressedSize && !inflater.finished()) {
+                int n = inflater.inflate(result, length, uncompressedSize - length);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += n;
+            }
+            if (length != uncompressedSize) {
+                throw new IOException("Truncated manifest entry");
+            }
+            return result;
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid manifest entry", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    /**
+     * Thrown when the archive can not be read through its central directory, so that it is read using {@link JarFile}.
+     */
+    private static final class UnsupportedArchiveException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        private UnsupportedArchiveException(String message) {
+            super(message);
+        }
+
+    }
+
+}
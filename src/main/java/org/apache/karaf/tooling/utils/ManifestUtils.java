@@ -17,8 +17,10 @@
  */
 package org.apache.karaf.tooling.utils;
 
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.jar.Manifest;
 
 import org.apache.felix.utils.manifest.Clause;
@@ -119,6 +121,42 @@ public class ManifestUtils {
     	return value;    	
     }
     
+    /**
+     * Get the main attributes of the manifest as a map of strings.
+     *
+     * @param manifest the manifest, may be <code>null</code>
+     * @return the main attributes, in the manifest order
+     */
+    public static Map<String, String> getHeaders(Manifest manifest) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        if (manifest != null) {
+            for (Map.Entry<Object, Object> attr : manifest.getMainAttributes().entrySet()) {
+                headers.put(attr.getKey().toString(), attr.getValue().toString());
+            }
+        }
+        return headers;
+    }
+
+    /**
+     * Get a header from the main attributes of a manifest, as returned by {@link #getHeaders(Manifest)}.
+     * Like manifest attributes, header names are case insensitive.
+     *
+     * @param name the header name
+     * @param headers the main attributes
+     * @return the header value, or <code>null</code> if not present
+     */
+    public static String getHeader(String name, Map<String, String> headers) {
+        String value = headers.get(name);
+        if (value == null) {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                if (header.getKey().equalsIgnoreCase(name)) {
+                    return header.getValue();
+                }
+            }
+        }
+        return value;
+    }
+
     public static String getBsn(Manifest manifest) {
     	String bsn = getHeader(Constants.BUNDLE_SYMBOLICNAME, manifest);
         return bsn;
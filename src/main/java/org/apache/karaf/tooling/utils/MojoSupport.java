@@ -31,7 +31,9 @@ import org.apache.maven.execution.MavenSession;
 import org.apache.maven.model.Dependency;
 import org.apache.maven.model.DependencyManagement;
 import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecution;
 import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
@@ -109,6 +111,47 @@ public abstract class MojoSupport extends AbstractMojo {
     @Component
     protected PlexusContainer container;
 
+    /**
+     * File receiving a trace of the goals of the build in the Chrome trace event format, which can be loaded in
+     * <code>chrome://tracing</code> or Perfetto.  The goals of all the modules writing to the same file share a
+     * single timeline, including modules built in parallel, so it should be an absolute path.
+     */
+    @Parameter(property = "karaf.trace")
+    protected File traceFile;
+
+    @Parameter(defaultValue = "${mojoExecution}", readonly = true)
+    protected MojoExecution mojoExecution;
+
+    /**
+     * Execute the goal within a span, and append it to the trace of the build if enabled.
+     */
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        Instrumentation.Trace trace = traceFile != null && mavenSession != null
+                ? Instrumentation.trace(mavenSession.getRequest(), traceFile) : null;
+        Instrumentation.Trace previous = Instrumentation.attach(trace);
+        String goal = mojoExecution != null ? mojoExecution.getGoal() : getClass().getSimpleName();
+        try (Instrumentation.Span span = Instrumentation.start("karaf:" + goal + (project != null ? " " + project.getArtifactId() : ""))) {
+            executeGoal();
+        } finally {
+            Instrumentation.attach(previous);
+            if (trace != null) {
+                try {
+                    trace.flush();
+                } catch (IOException e) {
+                    getLog().warn("Unable to write trace to " + trace.getFile(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Execute the goal.  Goals implement this method rather than {@link #execute()} to be traced, it does nothing by
+     * default.
+     */
+    protected void executeGoal() throws MojoExecutionException, MojoFailureException {
+    }
+
     protected MavenProject getProject() {
         return project;
     }
@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.tooling.verify;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Verification of a batch of items at once, falling back to verifying them by recursive bisection when the
+ * batch fails.</p>
+ *
+ * <p>A failed batch is split in two halves which are verified separately, until the failing items are isolated.
+ * When a batch fails while all its parts succeed, its items only fail when combined, and the batch itself is
+ * reported as failed.  Items which only succeed when verified together with other items are not detected.</p>
+ */
+public class Bisection {
+
+    /**
+     * The verification of a group of items.
+     */
+    public interface Check<T> {
+
+        /**
+         * @param items the items to verify together
+         * @return <code>true</code> if the verification succeeded
+         */
+        boolean verify(List<T> items);
+
+    }
+
+    private Bisection() {
+        // hide the constructor
+    }
+
+    /**
+     * Verify the items in a single batch, bisecting it if it fails.
+     *
+     * @param items the items to verify
+     * @param check the verification
+     * @return the failed groups: single items which fail on their own, and groups of items which only fail when
+     * verified together, in the order of the items
+     */
+    public static <T> List<List<T>> bisect(List<T> items, Check<T> check) {
+        List<List<T>> failures = new ArrayList<>();
+        if (items.isEmpty() || check.verify(items)) {
+            return failures;
+        }
+        if (items.size() > 1) {
+            int half = items.size() / 2;
+            failures.addAll(bisect(items.subList(0, half), check));
+            failures.addAll(bisect(items.subList(half, items.size()), check));
+        }
+        if (failures.isEmpty()) {
+            failures.add(items);
+        }
+        return failures;
+    }
+
+}
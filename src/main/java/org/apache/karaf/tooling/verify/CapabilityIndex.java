@@ -0,0 +1,444 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.tooling.verify;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.karaf.features.internal.resolver.CapabilityImpl;
+import org.apache.karaf.features.internal.resolver.RequirementImpl;
+import org.apache.karaf.features.internal.resolver.ResourceBuilder;
+import org.apache.karaf.features.internal.resolver.ResourceImpl;
+import org.apache.karaf.features.internal.resolver.SimpleFilter;
+import org.apache.karaf.tooling.utils.IoUtils;
+import org.osgi.framework.BundleException;
+import org.osgi.framework.Constants;
+import org.osgi.framework.Version;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+
+import static org.apache.karaf.tooling.utils.IoUtils.readString;
+import static org.apache.karaf.tooling.utils.IoUtils.writeString;
+
+/**
+ * <p>An index of the capabilities and requirements of bundles, so that the manifest headers of a given bundle
+ * are only parsed once per build, however many resolutions install it.</p>
+ *
+ * <p>Entries are keyed by the bundle location and validated against a checksum of the headers.  Namespaces,
+ * directives, attributes and filters are interned, so that they are shared between all the resources built from
+ * the index.  The index can be persisted to a binary file, so that the next build does not have to parse the
+ * headers again.</p>
+ */
+public class CapabilityIndex {
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final byte STRING = 0;
+    private static final byte VERSION = 1;
+    private static final byte LONG = 2;
+    private static final byte DOUBLE = 3;
+    private static final byte LIST = 4;
+
+    private static class Clause {
+        private final String namespace;
+        private final Map<String, String> dirs;
+        private final Map<String, Object> attrs;
+        private final SimpleFilter filter;
+
+        private Clause(String namespace, Map<String, String> dirs, Map<String, Object> attrs, SimpleFilter filter) {
+            this.namespace = namespace;
+            this.dirs = dirs;
+            this.attrs = attrs;
+            this.filter = filter;
+        }
+    }
+
+    private static class Template {
+        private final String checksum;
+        private final List<Clause> capabilities;
+        private final List<Clause> requirements;
+        private final boolean persistent;
+
+        private Template(String checksum, List<Clause> capabilities, List<Clause> requirements, boolean persistent) {
+            this.checksum = checksum;
+            this.capabilities = capabilities;
+            this.requirements = requirements;
+            this.persistent = persistent;
+        }
+    }
+
+    private final File indexFile;
+    private final ConcurrentMap<String, Template> templates = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Object, Object> interned = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, SimpleFilter> filters = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private volatile boolean modified;
+
+    /**
+     * @param indexFile the file used to persist the index, may be <code>null</code> for an in-memory index
+     */
+    public CapabilityIndex(File indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * Add the capabilities and requirements of a bundle to the given resource, parsing the headers only if the
+     * index does not already contain them.
+     *
+     * @param resource the resource to populate
+     * @param location the bundle location
+     * @param headers the bundle manifest headers
+     * @throws BundleException if the headers are invalid
+     */
+    public void build(ResourceImpl resource, String location, Map<String, String> headers) throws BundleException {
+        String checksum = checksum(headers);
+        Template template = templates.get(location);
+        if (template != null && template.checksum.equals(checksum)) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            template = createTemplate(checksum, ResourceBuilder.build(location, headers));
+            templates.put(location, template);
+            modified = true;
+        }
+        for (Clause clause : template.capabilities) {
+            resource.addCapability(new CapabilityImpl(resource, clause.namespace, clause.dirs, clause.attrs));
+        }
+        for (Clause clause : template.requirements) {
+            resource.addRequirement(new RequirementImpl(resource, clause.namespace, clause.dirs, clause.attrs, clause.filter));
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private Template createTemplate(String checksum, ResourceImpl resource) {
+        boolean persistent = true;
+        List<Clause> capabilities = new ArrayList<>();
+        for (Capability cap : resource.getCapabilities(null)) {
+            Clause clause = createClause(cap.getNamespace(), cap.getDirectives(), cap.getAttributes(), false, null);
+            persistent &= isPersistent(clause.attrs);
+            capabilities.add(clause);
+        }
+        List<Clause> requirements = new ArrayList<>();
+        for (Requirement req : resource.getRequirements(null)) {
+            SimpleFilter filter = req instanceof RequirementImpl ? ((RequirementImpl) req).getFilter() : null;
+            Clause clause = createClause(req.getNamespace(), req.getDirectives(), req.getAttributes(), true, filter);
+            persistent &= isPersistent(clause.attrs);
+            requirements.add(clause);
+        }
+        return new Template(checksum, capabilities, requirements, persistent);
+    }
+
+    private Clause createClause(String namespace, Map<String, String> dirs, Map<String, Object> attrs,
+                                boolean requirement, SimpleFilter filter) {
+        Map<String, String> internedDirs = new HashMap<>();
+        for (Map.Entry<String, String> entry : dirs.entrySet()) {
+            internedDirs.put(intern(entry.getKey()), intern(entry.getValue()));
+        }
+        Map<String, Object> internedAttrs = new HashMap<>();
+        for (Map.Entry<String, Object> entry : attrs.entrySet()) {
+            internedAttrs.put(intern(entry.getKey()), intern(entry.getValue()));
+        }
+        internedDirs = intern(internedDirs);
+        internedAttrs = intern(internedAttrs);
+        if (!requirement) {
+            filter = null;
+        } else if (filter == null) {
+            filter = getFilter(internedDirs, internedAttrs);
+        } else {
+            String filterDir = internedDirs.get(Constants.FILTER_DIRECTIVE);
+            if (filterDir != null) {
+                SimpleFilter existing = filters.putIfAbsent(filterDir, filter);
+                filter = existing != null ? existing : filter;
+            }
+        }
+        return new Clause(intern(namespace), internedDirs, internedAttrs, filter);
+    }
+
+    private SimpleFilter getFilter(Map<String, String> dirs, Map<String, Object> attrs) {
+        String filterDir = dirs.get(Constants.FILTER_DIRECTIVE);
+        if (filterDir == null) {
+            return SimpleFilter.convert(attrs);
+        }
+        SimpleFilter filter = filters.get(filterDir);
+        if (filter == null) {
+            filter = SimpleFilter.parse(filterDir);
+            SimpleFilter existing = filters.putIfAbsent(filterDir, filter);
+            filter = existing != null ? existing : filter;
+        }
+        return filter;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T intern(T value) {
+        if (value == null) {
+            return null;
+        }
+        Object existing = interned.putIfAbsent(value, value);
+        return existing != null ? (T) existing : value;
+    }
+
+    private static boolean isPersistent(Map<String, Object> attrs) {
+        for (Object value : attrs.values()) {
+            if (value instanceof List) {
+                for (Object v : (List<?>) value) {
+                    if (!isPersistentValue(v)) {
+                        return false;
+                    }
+                }
+            } else if (!isPersistentValue(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isPersistentValue(Object value) {
+        return value instanceof String || value instanceof Version || value instanceof Long || value instanceof Double;
+    }
+
+    private static String checksum(Map<String, String> headers) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            for (Map.Entry<String, String> entry : new TreeMap<>(headers).entrySet()) {
+                digest.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                digest.update(entry.getValue().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            return IoUtils.toHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Load the index from its file, if any.  A corrupted or outdated file is ignored.
+     */
+    public synchronized void load() {
+        if (indexFile == null || !indexFile.isFile()) {
+            return;
+        }
+        Map<String, Template> loaded = new HashMap<>();
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (dis.readInt() != FORMAT_VERSION) {
+                return;
+            }
+            String[] strings = new String[dis.readInt()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = intern(readString(dis));
+            }
+            int count = dis.readInt();
+            for (int i = 0; i < count; i++) {
+                String location = strings[dis.readInt()];
+                String checksum = strings[dis.readInt()];
+                List<Clause> capabilities = readClauses(dis, strings, false);
+                List<Clause> requirements = readClauses(dis, strings, true);
+                loaded.put(location, new Template(checksum, capabilities, requirements, true));
+            }
+        } catch (IOException | RuntimeException e) {
+            return;
+        }
+        templates.putAll(loaded);
+    }
+
+    /**
+     * Write the index to its file if it has been modified since it has been loaded.
+     *
+     * @throws IOException if the file can not be written
+     */
+    public synchronized void save() throws IOException {
+        if (indexFile == null || !modified) {
+            return;
+        }
+        final Map<String, Template> persistent = new TreeMap<>();
+        for (Map.Entry<String, Template> entry : templates.entrySet()) {
+            if (entry.getValue().persistent) {
+                persistent.put(entry.getKey(), entry.getValue());
+            }
+        }
+        // All strings are written once in a table and referenced by their index
+        final Map<String, Integer> strings = new HashMap<>();
+        final List<String> table = new ArrayList<>();
+        for (Map.Entry<String, Template> entry : persistent.entrySet()) {
+            addString(strings, table, entry.getKey());
+            addString(strings, table, entry.getValue().checksum);
+            for (Clause clause : entry.getValue().capabilities) {
+                addStrings(strings, table, clause);
+            }
+            for (Clause clause : entry.getValue().requirements) {
+                addStrings(strings, table, clause);
+            }
+        }
+        IoUtils.writeAtomically(indexFile, new IoUtils.ContentWriter() {
+            @Override
+            public void write(DataOutputStream dos) throws IOException {
+                dos.writeInt(FORMAT_VERSION);
+                dos.writeInt(table.size());
+                for (String s : table) {
+                    writeString(dos, s);
+                }
+                dos.writeInt(persistent.size());
+                for (Map.Entry<String, Template> entry : persistent.entrySet()) {
+                    dos.writeInt(strings.get(entry.getKey()));
+                    dos.writeInt(strings.get(entry.getValue().checksum));
+                    writeClauses(dos, strings, entry.getValue().capabilities);
+                    writeClauses(dos, strings, entry.getValue().requirements);
+                }
+            }
+        });
+        modified = false;
+    }
+
+    private static void addStrings(Map<String, Integer> strings, List<String> table, Clause clause) {
+        addString(strings, table, clause.namespace);
+        for (Map.Entry<String, String> entry : clause.dirs.entrySet()) {
+            addString(strings, table, entry.getKey());
+            addString(strings, table, entry.getValue());
+        }
+        for (Map.Entry<String, Object> entry : clause.attrs.entrySet()) {
+            addString(strings, table, entry.getKey());
+            if (entry.getValue() instanceof List) {
+                for (Object v : (List<?>) entry.getValue()) {
+                    addString(strings, table, v.toString());
+                }
+            } else {
+                addString(strings, table, entry.getValue().toString());
+            }
+        }
+    }
+
+    private static void addString(Map<String, Integer> strings, List<String> table, String value) {
+        if (!strings.containsKey(value)) {
+            strings.put(value, table.size());
+            table.add(value);
+        }
+    }
+
+    private static void writeClauses(DataOutputStream dos, Map<String, Integer> strings, List<Clause> clauses) throws IOException {
+        dos.writeInt(clauses.size());
+        for (Clause clause : clauses) {
+            dos.writeInt(strings.get(clause.namespace));
+            dos.writeInt(clause.dirs.size());
+            for (Map.Entry<String, String> entry : clause.dirs.entrySet()) {
+                dos.writeInt(strings.get(entry.getKey()));
+                dos.writeInt(strings.get(entry.getValue()));
+            }
+            dos.writeInt(clause.attrs.size());
+            for (Map.Entry<String, Object> entry : clause.attrs.entrySet()) {
+                dos.writeInt(strings.get(entry.getKey()));
+                Object value = entry.getValue();
+                if (value instanceof List) {
+                    List<?> list = (List<?>) value;
+                    dos.writeByte(LIST);
+                    dos.writeInt(list.size());
+                    for (Object v : list) {
+                        writeValue(dos, strings, v);
+                    }
+                } else {
+                    writeValue(dos, strings, value);
+                }
+            }
+        }
+    }
+
+    private static void writeValue(DataOutputStream dos, Map<String, Integer> strings, Object value) throws IOException {
+        if (value instanceof Version) {
+            dos.writeByte(VERSION);
+        } else if (value instanceof Long) {
+            dos.writeByte(LONG);
+        } else if (value instanceof Double) {
+            dos.writeByte(DOUBLE);
+        } else {
+            dos.writeByte(STRING);
+        }
+        dos.writeInt(strings.get(value.toString()));
+    }
+
+    private List<Clause> readClauses(DataInputStream dis, String[] strings, boolean requirements) throws IOException {
+        int count = dis.readInt();
+        List<Clause> clauses = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String namespace = strings[dis.readInt()];
+            int nbDirs = dis.readInt();
+            Map<String, String> dirs = new HashMap<>();
+            for (int j = 0; j < nbDirs; j++) {
+                dirs.put(strings[dis.readInt()], strings[dis.readInt()]);
+            }
+            int nbAttrs = dis.readInt();
+            Map<String, Object> attrs = new HashMap<>();
+            for (int j = 0; j < nbAttrs; j++) {
+                String key = strings[dis.readInt()];
+                byte type = dis.readByte();
+                if (type == LIST) {
+                    int size = dis.readInt();
+                    List<Object> list = new ArrayList<>(size);
+                    for (int k = 0; k < size; k++) {
+                        list.add(readValue(dis.readByte(), strings[dis.readInt()]));
+                    }
+                    attrs.put(key, intern(list));
+                } else {
+                    attrs.put(key, readValue(type, strings[dis.readInt()]));
+                }
+            }
+            dirs = intern(dirs);
+            attrs = intern(attrs);
+            clauses.add(new Clause(namespace, dirs, attrs, requirements ? getFilter(dirs, attrs) : null));
+        }
+        return clauses;
+    }
+
+    private Object readValue(byte type, String value) throws IOException {
+        switch (type) {
+        case STRING:
+            return value;
+        case VERSION:
+            return intern(Version.parseVersion(value));
+        case LONG:
+            return Long.valueOf(value);
+        case DOUBLE:
+            return Double.valueOf(value);
+        default:
+            throw new IOException("Unsupported value type " + type);
+        }
+    }
+
+}
@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.tooling.verify;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.karaf.features.internal.download.DownloadCallback;
+import org.apache.karaf.features.internal.download.DownloadManager;
+import org.apache.karaf.features.internal.download.Downloader;
+import org.apache.karaf.features.internal.download.StreamProvider;
+import org.apache.karaf.tooling.utils.IoUtils;
+
+/**
+ * <p>Fingerprints of successfully verified features, used to skip the verification of unchanged features.</p>
+ *
+ * <p>A fingerprint covers the verification context (framework features, java version, metadata...), the
+ * definition of the feature and of the features it depends on, and the checksums of all the bundles which have
+ * been installed when the feature was last verified.  Each feature is stored in its own file, so that the
+ * directory can be shared between builds.</p>
+ */
+public class FeatureFingerprints {
+
+    private static final String FEATURE = "feature";
+    private static final String FINGERPRINT = "fingerprint";
+    private static final String BUNDLES = "bundles";
+
+    private final File directory;
+    private final String context;
+    private final DownloadManager manager;
+    private final ConcurrentMap<String, String> checksums = new ConcurrentHashMap<>();
+
+    /**
+     * @param directory the directory holding the fingerprints
+     * @param context a description of everything, besides the feature itself, which influences the verification
+     * @param manager the download manager used to locate the bundles
+     */
+    public FeatureFingerprints(File directory, String context, DownloadManager manager) {
+        this.directory = directory;
+        this.context = context;
+        this.manager = manager;
+    }
+
+    /**
+     * Check if the feature has already been verified with the same definition, context and bundles.
+     *
+     * @param id the feature id
+     * @param definition the definition of the feature and of the features it depends on
+     * @return <code>true</code> if the verification can be skipped
+     */
+    public boolean isUpToDate(String id, String definition) {
+        File file = getFile(id);
+        if (!file.isFile()) {
+            return false;
+        }
+        try {
+            Properties props = new Properties();
+            try (InputStream is = new FileInputStream(file)) {
+                props.load(is);
+            }
+            String fingerprint = props.getProperty(FINGERPRINT);
+            if (!id.equals(props.getProperty(FEATURE)) || fingerprint == null) {
+                return false;
+            }
+            String bundles = props.getProperty(BUNDLES, "");
+            List<String> locations = bundles.isEmpty()
+                    ? Collections.<String>emptyList() : Arrays.asList(bundles.split("\n"));
+            return fingerprint.equals(compute(definition, locations));
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Record the fingerprint of a successfully verified feature.
+     *
+     * @param id the feature id
+     * @param definition the definition of the feature and of the features it depends on
+     * @param locations the locations of the bundles installed while verifying the feature
+     * @throws Exception if a bundle can not be downloaded or the fingerprint can not be written
+     */
+    public void record(String id, String definition, Collection<String> locations) throws Exception {
+        Set<String> sorted = new TreeSet<>(locations);
+        StringBuilder bundles = new StringBuilder();
+        for (String location : sorted) {
+            if (bundles.length() > 0) {
+                bundles.append("\n");
+            }
+            bundles.append(location);
+        }
+        final Properties props = new Properties();
+        props.setProperty(FEATURE, id);
+        props.setProperty(FINGERPRINT, compute(definition, sorted));
+        props.setProperty(BUNDLES, bundles.toString());
+
+        IoUtils.writeAtomically(getFile(id), new IoUtils.ContentWriter() {
+            @Override
+            public void write(DataOutputStream dos) throws IOException {
+                props.store(dos, null);
+            }
+        });
+    }
+
+    private String compute(String definition, Collection<String> locations) throws Exception {
+        downloadChecksums(locations);
+        MessageDigest digest = MessageDigest.getInstance("SHA-1");
+        digest.update(context.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(definition.getBytes(StandardCharsets.UTF_8));
+        for (String location : new TreeSet<>(locations)) {
+            digest.update((byte) 0);
+            digest.update(location.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(checksums.get(location).getBytes(StandardCharsets.UTF_8));
+        }
+        return IoUtils.toHex(digest.digest());
+    }
+
+    private void downloadChecksums(Collection<String> locations) throws Exception {
+        Downloader downloader = manager.createDownloader();
+        for (final String location : locations) {
+            if (!checksums.containsKey(location)) {
+                downloader.download(location, new DownloadCallback() {
+                    @Override
+                    public void downloaded(StreamProvider provider) throws Exception {
+                        checksums.putIfAbsent(location, IoUtils.sha1(provider.getFile()));
+                    }
+                });
+            }
+        }
+        downloader.await();
+    }
+
+    private File getFile(String id) {
+        return new File(directory, id.replaceAll("[^A-Za-z0-9._-]", "_") + ".properties");
+    }
+
+}
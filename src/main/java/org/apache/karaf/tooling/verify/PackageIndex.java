@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.tooling.verify;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Manifest;
+
+import org.apache.felix.utils.manifest.Clause;
+import org.apache.karaf.tooling.utils.ManifestUtils;
+
+/**
+ * <p>An index of the packages exported by a set of bundles, used to report missing packages without running the
+ * resolver.</p>
+ *
+ * <p>The check is lenient: an import is only reported as missing when no indexed bundle exports the package in a
+ * compatible version, regardless of attributes, uses constraints or whether the exporter would be resolved.  It can
+ * therefore miss failures, which are left to the resolver, but does not report failures the resolver would not.</p>
+ */
+public class PackageIndex {
+
+    private final Map<String, List<Clause>> exports = new HashMap<>();
+
+    /**
+     * Add the packages exported by a bundle to the index.
+     *
+     * @param headers the bundle headers
+     */
+    public void addExports(Map<String, String> headers) {
+        for (Clause export : ManifestUtils.getExports(toManifest(headers))) {
+            List<Clause> clauses = exports.get(export.getName());
+            if (clauses == null) {
+                clauses = new ArrayList<>();
+                exports.put(export.getName(), clauses);
+            }
+            clauses.add(export);
+        }
+    }
+
+    /**
+     * Get the mandatory imports of a bundle which no indexed bundle can satisfy.
+     *
+     * @param headers the bundle headers
+     * @return the unsatisfied imports, empty if all of them can be satisfied
+     */
+    public List<Clause> getMissingImports(Map<String, String> headers) {
+        List<Clause> missing = new ArrayList<>();
+        for (Clause clause : ManifestUtils.getMandatoryImports(toManifest(headers))) {
+            if (!isExported(clause)) {
+                missing.add(clause);
+            }
+        }
+        return missing;
+    }
+
+    private boolean isExported(Clause clause) {
+        List<Clause> clauses = exports.get(clause.getName());
+        if (clauses != null) {
+            for (Clause export : clauses) {
+                if (ManifestUtils.matches(clause, export)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static Manifest toManifest(Map<String, String> headers) {
+        Manifest manifest = new Manifest();
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            manifest.getMainAttributes().putValue(header.getKey(), header.getValue());
+        }
+        return manifest;
+    }
+
+}
@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.tooling.verify;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * <p>A history of the resolution time and resource count of verified features, used to detect regressions.</p>
+ *
+ * <p>The last samples of each feature and conditional are kept, and a new sample is a regression when it grows
+ * by more than a given percentage over the median of the previous ones.  Resolution times below a minimum are
+ * not compared, as they are mostly noise.</p>
+ */
+public class ResolutionHistory {
+
+    private final File file;
+    private final int size;
+    private final int threshold;
+    private final long minTime;
+    private final Map<String, LinkedList<long[]>> samples = new TreeMap<>();
+
+    /**
+     * @param file the history file
+     * @param size the number of samples kept for each feature
+     * @param threshold the allowed growth, in percent, over the baseline
+     * @param minTime the baseline resolution time, in milliseconds, under which times are not compared
+     */
+    public ResolutionHistory(File file, int size, int threshold, long minTime) {
+        this.file = file;
+        this.size = size;
+        this.threshold = threshold;
+        this.minTime = minTime;
+    }
+
+    /**
+     * Load the history from its file, if any.  Invalid lines are ignored.
+     *
+     * @throws IOException if the file can not be read
+     */
+    public void load() throws IOException {
+        samples.clear();
+        if (!file.isFile()) {
+            return;
+        }
+        Properties props = new Properties();
+        try (InputStream is = new FileInputStream(file)) {
+            props.load(is);
+        }
+        for (String key : props.stringPropertyNames()) {
+            LinkedList<long[]> list = new LinkedList<>();
+            for (String sample : props.getProperty(key).trim().split("\\s+")) {
+                String[] values = sample.split(":");
+                try {
+                    list.add(new long[] { Long.parseLong(values[0]), Long.parseLong(values[1]) });
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    // ignore invalid samples
+                }
+            }
+            samples.put(key, list);
+        }
+    }
+
+    /**
+     * Compare the successful verifications of the report with the history, and add them to it.
+     *
+     * @param entries the report entries
+     * @param recordRegressions whether samples detected as regressions are added to the history
+     * @return a description of the regressions
+     */
+    public List<String> check(Collection<VerificationReport.Entry> entries, boolean recordRegressions) {
+        List<String> regressions = new ArrayList<>();
+        for (VerificationReport.Entry entry : entries) {
+            if (!VerificationReport.SUCCESS.equals(entry.getOutcome())) {
+                continue;
+            }
+            String key = (entry.getTarget() != null ? entry.getTarget() + "|" : "") + entry.getType() + "|" + entry.getId();
+            LinkedList<long[]> list = samples.get(key);
+            if (list == null) {
+                list = new LinkedList<>();
+                samples.put(key, list);
+            }
+            String regression = null;
+            if (!list.isEmpty()) {
+                long baselineTime = median(list, 0);
+                long baselineResources = median(list, 1);
+                if (baselineTime >= minTime && isRegression(baselineTime, entry.getResolverTime())) {
+                    regression = "resolution time of " + describe(entry) + " grew from " + baselineTime
+                            + " ms to " + entry.getResolverTime() + " ms";
+                } else if (baselineResources > 0 && isRegression(baselineResources, entry.getResources())) {
+                    regression = "number of resources of " + describe(entry) + " grew from " + baselineResources
+                            + " to " + entry.getResources();
+                }
+            }
+            if (regression != null) {
+                regressions.add(regression);
+            }
+            if (regression == null || recordRegressions) {
+                list.add(new long[] { entry.getResolverTime(), entry.getResources() });
+                while (list.size() > size) {
+                    list.removeFirst();
+                }
+            }
+        }
+        return regressions;
+    }
+
+    private boolean isRegression(long baseline, long value) {
+        return (value - baseline) * 100 > baseline * threshold;
+    }
+
+    private static String describe(VerificationReport.Entry entry) {
+        return entry.getId() + (entry.getTarget() != null ? " (" + entry.getTarget() + ")" : "");
+    }
+
+    private static long median(List<long[]> list, int index) {
+        long[] values = new long[list.size()];
+        int i = 0;
+        for (long[] sample : list) {
+            values[i++] = sample[index];
+        }
+        Arrays.sort(values);
+        return values[values.length / 2];
+    }
+
+    /**
+     * Write the history to its file.
+     *
+     * @throws IOException if the file can not be written
+     */
+    public void save() throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create directory " + dir);
+        }
+        Properties props = new Properties();
+        for (Map.Entry<String, LinkedList<long[]>> entry : samples.entrySet()) {
+            StringBuilder sb = new StringBuilder();
+            for (long[] sample : entry.getValue()) {
+                if (sb.length() > 0) {
+                    sb.append(" ");
+                }
+                sb.append(sample[0]).append(":").append(sample[1]);
+            }
+            props.setProperty(entry.getKey(), sb.toString());
+        }
+        try (OutputStream os = new FileOutputStream(file)) {
+            props.store(os, "Resolution time (ms) and number of resources of verified features");
+        }
+    }
+
+}
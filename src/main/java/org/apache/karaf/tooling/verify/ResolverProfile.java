@@ -0,0 +1,428 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.tooling.verify;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.karaf.tooling.VerifyMojo;
+import org.apache.maven.plugin.logging.Log;
+import org.osgi.framework.namespace.IdentityNamespace;
+import org.osgi.framework.namespace.PackageNamespace;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+import org.osgi.resource.Wire;
+import org.osgi.resource.Wiring;
+import org.osgi.service.resolver.HostedCapability;
+import org.osgi.service.resolver.ResolutionException;
+import org.osgi.service.resolver.ResolveContext;
+import org.osgi.service.resolver.Resolver;
+
+/**
+ * <p>Collects statistics about the work done by the resolver while verifying features, and ranks the packages and
+ * bundles which cause the most of it.</p>
+ *
+ * <p>Candidate lists are counted by intercepting the resolve context, while failed permutations and uses
+ * constraint violations are extracted from the resolver debug output.  A package is considered costly when it
+ * has several candidate providers, each of them being a choice the resolver may have to revisit, and when it is
+ * involved in uses constraint violations.</p>
+ */
+public class ResolverProfile {
+
+    private static final Pattern PACKAGE_FILTER = Pattern.compile("\\(" + Pattern.quote(PackageNamespace.PACKAGE_NAMESPACE) + "=([^)]+)\\)");
+    private static final Pattern VIOLATION_PACKAGE = Pattern.compile("package '([^']+)'");
+    // Felix prints resources as "symbolic-name [resource]"
+    private static final Pattern VIOLATION_RESOURCE = Pattern.compile("[^\\s\\[]+ \\[([^\\]]+)\\]");
+
+    /**
+     * The resolver work done while verifying a feature, or a feature with a conditional.
+     */
+    public static class Stats {
+        private final String id;
+        private final AtomicLong resolutions = new AtomicLong();
+        private final AtomicLong candidateLists = new AtomicLong();
+        private final AtomicLong candidates = new AtomicLong();
+        private final AtomicLong ambiguousCandidateLists = new AtomicLong();
+        private final AtomicLong backtracks = new AtomicLong();
+        private final AtomicLong usesViolations = new AtomicLong();
+
+        private Stats(String id) {
+            this.id = id;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public long getResolutions() {
+            return resolutions.get();
+        }
+
+        /**
+         * @return the number of candidate permutations tried by the resolver
+         */
+        public long getPermutations() {
+            return resolutions.get() + backtracks.get();
+        }
+
+        public long getCandidateLists() {
+            return candidateLists.get();
+        }
+
+        public long getCandidates() {
+            return candidates.get();
+        }
+
+        public long getAmbiguousCandidateLists() {
+            return ambiguousCandidateLists.get();
+        }
+
+        public long getBacktracks() {
+            return backtracks.get();
+        }
+
+        public long getUsesViolations() {
+            return usesViolations.get();
+        }
+    }
+
+    /**
+     * The resolver work attributed to a package or a bundle.
+     */
+    public static class Score {
+        private final String name;
+        private final AtomicLong ambiguities = new AtomicLong();
+        private final AtomicLong usesViolations = new AtomicLong();
+
+        private Score(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getAmbiguities() {
+            return ambiguities.get();
+        }
+
+        public long getUsesViolations() {
+            return usesViolations.get();
+        }
+    }
+
+    private static final Comparator<Score> BY_COST = new Comparator<Score>() {
+        @Override
+        public int compare(Score s1, Score s2) {
+            int c = Long.compare(s2.getUsesViolations(), s1.getUsesViolations());
+            if (c == 0) {
+                c = Long.compare(s2.getAmbiguities(), s1.getAmbiguities());
+            }
+            if (c == 0) {
+                c = s1.getName().compareTo(s2.getName());
+            }
+            return c;
+        }
+    };
+
+    private final List<Stats> stats = Collections.synchronizedList(new ArrayList<Stats>());
+    private final ConcurrentMap<String, Score> packages = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Score> bundles = new ConcurrentHashMap<>();
+
+    /**
+     * Start profiling the resolutions of a feature, or of a feature with a conditional.
+     */
+    public Stats start(String id) {
+        Stats s = new Stats(id);
+        stats.add(s);
+        return s;
+    }
+
+    /**
+     * Create a resolver logger which also records the failed permutations and uses constraint violations.
+     */
+    public org.apache.felix.resolver.Logger createLogger(final Stats stats, Log log) {
+        return new VerifyMojo.MavenResolverLog(log) {
+            @Override
+            protected void doLog(int level, String msg, Throwable throwable) {
+                record(stats, msg, throwable);
+                super.doLog(level, msg, throwable);
+            }
+        };
+    }
+
+    /**
+     * Wrap a resolver so that the candidate lists computed during its resolutions are recorded.
+     */
+    public Resolver wrap(Stats stats, TimingResolver resolver) {
+        return new ProfilingResolver(stats, resolver);
+    }
+
+    private class ProfilingResolver implements Resolver {
+        private final Stats stats;
+        private final TimingResolver resolver;
+
+        ProfilingResolver(Stats stats, TimingResolver resolver) {
+            this.stats = stats;
+            this.resolver = resolver;
+        }
+
+        @Override
+        public Map<Resource, List<Wire>> resolve(ResolveContext context) throws ResolutionException {
+            return resolver.resolve(wrap(stats, context));
+        }
+
+        public Map<Resource, List<Wire>> resolveDynamic(ResolveContext context, Wiring hostWiring, Requirement dynamicRequirement) throws ResolutionException {
+            return resolver.resolveDynamic(wrap(stats, context), hostWiring, dynamicRequirement);
+        }
+    }
+
+    /**
+     * Wrap a resolve context, forwarding every method so that the resolution is not changed by the profiling.
+     */
+    private ResolveContext wrap(final Stats stats, final ResolveContext context) {
+        stats.resolutions.incrementAndGet();
+        return new ResolveContext() {
+            @Override
+            public Collection<Resource> getMandatoryResources() {
+                return context.getMandatoryResources();
+            }
+
+            @Override
+            public Collection<Resource> getOptionalResources() {
+                return context.getOptionalResources();
+            }
+
+            @Override
+            public List<Capability> findProviders(Requirement requirement) {
+                List<Capability> providers = context.findProviders(requirement);
+                recordCandidates(stats, requirement, providers);
+                return providers;
+            }
+
+            @Override
+            public int insertHostedCapability(List<Capability> capabilities, HostedCapability hostedCapability) {
+                return context.insertHostedCapability(capabilities, hostedCapability);
+            }
+
+            @Override
+            public boolean isEffective(Requirement requirement) {
+                return context.isEffective(requirement);
+            }
+
+            @Override
+            public Map<Resource, Wiring> getWirings() {
+                return context.getWirings();
+            }
+
+            @Override
+            public Collection<Resource> getOndemandResources(Resource host) {
+                return context.getOndemandResources(host);
+            }
+
+            @Override
+            public List<Wire> getSubstitutionWires(Wiring wiring) {
+                return context.getSubstitutionWires(wiring);
+            }
+
+            @Override
+            public void onCancel(Runnable callback) {
+                context.onCancel(callback);
+            }
+        };
+    }
+
+    private void recordCandidates(Stats stats, Requirement requirement, List<Capability> providers) {
+        stats.candidateLists.incrementAndGet();
+        stats.candidates.addAndGet(providers.size());
+        if (providers.size() > 1) {
+            stats.ambiguousCandidateLists.incrementAndGet();
+            if (PackageNamespace.PACKAGE_NAMESPACE.equals(requirement.getNamespace())) {
+                String filter = requirement.getDirectives().get(PackageNamespace.REQUIREMENT_FILTER_DIRECTIVE);
+                Matcher matcher = filter != null ? PACKAGE_FILTER.matcher(filter) : null;
+                if (matcher != null && matcher.find()) {
+                    getScore(packages, matcher.group(1)).ambiguities.incrementAndGet();
+                }
+            }
+            Set<String> names = new LinkedHashSet<>();
+            for (Capability provider : providers) {
+                names.add(getName(provider.getResource()));
+            }
+            for (String name : names) {
+                getScore(bundles, name).ambiguities.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Record the failed permutations and uses constraint violations reported by the Felix resolver.  The messages
+     * are not part of any API, {@code ResolverProfileTest} checks that they are still recognized.
+     */
+    private void record(Stats stats, String msg, Throwable throwable) {
+        if (msg != null && msg.startsWith("Candidate permutation failed")) {
+            stats.backtracks.incrementAndGet();
+        }
+        String violation = null;
+        if (msg != null && msg.contains("Uses constraint violation")) {
+            violation = msg;
+        } else if (throwable != null && throwable.getMessage() != null
+                && throwable.getMessage().contains("Uses constraint violation")) {
+            violation = throwable.getMessage();
+        }
+        if (violation != null) {
+            stats.usesViolations.incrementAndGet();
+            // Only look at the summary, not at the dependency chains
+            int idx = violation.indexOf("\n");
+            String summary = idx > 0 ? violation.substring(0, idx) : violation;
+            Matcher matcher = VIOLATION_PACKAGE.matcher(summary);
+            if (matcher.find()) {
+                getScore(packages, matcher.group(1)).usesViolations.incrementAndGet();
+            }
+            Set<String> names = new LinkedHashSet<>();
+            matcher = VIOLATION_RESOURCE.matcher(summary);
+            while (matcher.find()) {
+                names.add(matcher.group(1));
+            }
+            for (String name : names) {
+                getScore(bundles, name).usesViolations.incrementAndGet();
+            }
+        }
+    }
+
+    private static String getName(Resource resource) {
+        List<Capability> caps = resource.getCapabilities(IdentityNamespace.IDENTITY_NAMESPACE);
+        if (!caps.isEmpty()) {
+            Map<String, Object> attrs = caps.get(0).getAttributes();
+            return attrs.get(IdentityNamespace.IDENTITY_NAMESPACE) + "/" + attrs.get(IdentityNamespace.CAPABILITY_VERSION_ATTRIBUTE);
+        }
+        return resource.toString();
+    }
+
+    private static Score getScore(ConcurrentMap<String, Score> scores, String name) {
+        Score score = scores.get(name);
+        if (score == null) {
+            score = new Score(name);
+            Score existing = scores.putIfAbsent(name, score);
+            score = existing != null ? existing : score;
+        }
+        return score;
+    }
+
+    public List<Score> getPackages() {
+        return rank(packages.values());
+    }
+
+    public List<Score> getBundles() {
+        return rank(bundles.values());
+    }
+
+    private static List<Score> rank(Collection<Score> scores) {
+        List<Score> ranked = new ArrayList<>(scores);
+        Collections.sort(ranked, BY_COST);
+        return ranked;
+    }
+
+    /**
+     * Log the most costly packages and bundles.
+     */
+    public void log(Log log, int max) {
+        List<Score> pkgs = getPackages();
+        List<Score> bnds = getBundles();
+        if (pkgs.isEmpty() && bnds.isEmpty()) {
+            return;
+        }
+        log.info("Packages causing the most resolver work (uses constraint violations / candidate ambiguities):");
+        for (Score score : pkgs.subList(0, Math.min(max, pkgs.size()))) {
+            log.info("    " + score.getName() + ": " + score.getUsesViolations() + " / " + score.getAmbiguities());
+        }
+        log.info("Bundles causing the most resolver work (uses constraint violations / candidate ambiguities):");
+        for (Score score : bnds.subList(0, Math.min(max, bnds.size()))) {
+            log.info("    " + score.getName() + ": " + score.getUsesViolations() + " / " + score.getAmbiguities());
+        }
+    }
+
+    /**
+     * Write the profile as JSON.
+     *
+     * @throws IOException if the file can not be written
+     */
+    public void write(File file) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create directory " + dir);
+        }
+        List<Stats> features;
+        synchronized (stats) {
+            features = new ArrayList<>(stats);
+        }
+        try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            writer.println("{");
+            writer.println("  \"features\": [");
+            for (int i = 0; i < features.size(); i++) {
+                Stats s = features.get(i);
+                writer.print("    {\"id\": " + VerificationReport.json(s.getId()));
+                writer.print(", \"resolutions\": " + s.getResolutions());
+                writer.print(", \"permutations\": " + s.getPermutations());
+                writer.print(", \"candidateLists\": " + s.getCandidateLists());
+                writer.print(", \"candidates\": " + s.getCandidates());
+                writer.print(", \"ambiguousCandidateLists\": " + s.getAmbiguousCandidateLists());
+                writer.print(", \"usesViolations\": " + s.getUsesViolations());
+                writer.print(", \"backtracks\": " + s.getBacktracks());
+                writer.println(i < features.size() - 1 ? "}," : "}");
+            }
+            writer.println("  ],");
+            writeScores(writer, "packages", getPackages());
+            writer.println(",");
+            writeScores(writer, "bundles", getBundles());
+            writer.println();
+            writer.println("}");
+        }
+    }
+
+    private static void writeScores(PrintWriter writer, String name, List<Score> scores) {
+        writer.println("  \"" + name + "\": [");
+        for (int i = 0; i < scores.size(); i++) {
+            Score score = scores.get(i);
+            writer.print("    {\"name\": " + VerificationReport.json(score.getName()));
+            writer.print(", \"usesViolations\": " + score.getUsesViolations());
+            writer.print(", \"ambiguities\": " + score.getAmbiguities());
+            writer.println(i < scores.size() - 1 ? "}," : "}");
+        }
+        writer.print("  ]");
+    }
+
+}
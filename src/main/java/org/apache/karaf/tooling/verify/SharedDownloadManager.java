@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.tooling.verify;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.apache.karaf.features.internal.download.impl.AbstractDownloadTask;
+import org.apache.karaf.profile.assembly.CustomDownloadManager;
+import org.apache.karaf.tooling.utils.DependencyHelper;
+import org.apache.maven.plugin.logging.Log;
+import org.ops4j.pax.url.mvn.MavenResolver;
+
+/**
+ * <p>A download manager sharing its downloads with the managers forked from it.</p>
+ *
+ * <p>Each forked manager keeps its own providers, so that resolutions using different managers stay isolated,
+ * but a given url is only downloaded once for all of them: concurrent requests for the same url wait for a
+ * single download.  Failed downloads are not shared: later requests for the same url try again.</p>
+ *
+ * <p>When a {@link DependencyHelper} is given, <code>mvn:</code> urls are first resolved through the repository
+ * system of the Maven session, which sees the reactor artifacts and the artifacts already resolved by the build,
+ * and only fall back to the pax-url resolver if it can not resolve them.</p>
+ */
+public class SharedDownloadManager extends CustomDownloadManager {
+
+    private final MavenResolver resolver;
+    private final ScheduledExecutorService executor;
+    private final DependencyHelper helper;
+    private final Log log;
+    private final ConcurrentMap<String, FutureTask<File>> downloads;
+
+    public SharedDownloadManager(MavenResolver resolver, ScheduledExecutorService executor) {
+        this(resolver, executor, null, null);
+    }
+
+    /**
+     * @param helper the helper used to resolve <code>mvn:</code> urls through the Maven session, may be <code>null</code>
+     * @param log the log used to report, at debug level, the urls the Maven session can not resolve
+     */
+    public SharedDownloadManager(MavenResolver resolver, ScheduledExecutorService executor, DependencyHelper helper, Log log) {
+        this(resolver, executor, helper, log, new ConcurrentHashMap<String, FutureTask<File>>());
+    }
+
+    private SharedDownloadManager(MavenResolver resolver, ScheduledExecutorService executor, DependencyHelper helper,
+                                  Log log, ConcurrentMap<String, FutureTask<File>> downloads) {
+        super(resolver, executor);
+        this.resolver = resolver;
+        this.executor = executor;
+        this.helper = helper;
+        this.log = log;
+        this.downloads = downloads;
+    }
+
+    /**
+     * Create a new download manager with no providers, which shares its downloads with this one.
+     */
+    public SharedDownloadManager fork() {
+        return new SharedDownloadManager(resolver, executor, helper, log, downloads);
+    }
+
+    @Override
+    protected AbstractDownloadTask createDownloadTask(final String url) {
+        final AbstractDownloadTask task = super.createDownloadTask(url);
+        return new AbstractDownloadTask(executor, url) {
+            @Override
+            protected File download() throws Exception {
+                return SharedDownloadManager.this.download(url, task);
+            }
+        };
+    }
+
+    private File download(final String url, final AbstractDownloadTask task) throws Exception {
+        FutureTask<File> future = new FutureTask<>(new Callable<File>() {
+            @Override
+            public File call() throws Exception {
+                File file = resolveFromSession(url);
+                if (file != null) {
+                    return file;
+                }
+                task.run();
+                return task.getFile();
+            }
+        });
+        FutureTask<File> existing = downloads.putIfAbsent(url, future);
+        if (existing != null) {
+            future = existing;
+        } else {
+            future.run();
+        }
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            // only share successful downloads, so that a transient error does not fail every later request
+            downloads.remove(url, future);
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw new IOException("Error downloading " + url, cause);
+        }
+    }
+
+    /**
+     * @return the file of the artifact, or <code>null</code> if it can not be resolved through the Maven session
+     */
+    private File resolveFromSession(String url) {
+        // urls with an explicit repository or a version range are left to pax-url
+        if (helper == null || !url.startsWith("mvn:") || url.contains("!") || url.contains("[") || url.contains("(")) {
+            return null;
+        }
+        try {
+            File file = helper.resolveIfAvailable(url, log);
+            if (file != null && file.isFile()) {
+                return file;
+            }
+        } catch (RuntimeException e) {
+            log.debug("Could not resolve " + url + " through the Maven session: " + e);
+        }
+        log.debug("Falling back to pax-url to resolve " + url);
+        return null;
+    }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.tooling.verify;
+
+import java.net.MalformedURLException;
+import java.util.Map;
+
+import org.apache.karaf.features.internal.download.DownloadCallback;
+import org.apache.karaf.features.internal.download.DownloadManager;
+import org.apache.karaf.features.internal.download.Downloader;
+import org.apache.karaf.features.internal.download.StreamProvider;
+import org.apache.karaf.features.internal.util.MultiException;
+
+/**
+ * A download manager recording the time spent waiting for downloads into a report entry.
+ */
+public class TimingDownloadManager implements DownloadManager {
+
+    private final DownloadManager manager;
+    private final VerificationReport.Entry entry;
+
+    public TimingDownloadManager(DownloadManager manager, VerificationReport.Entry entry) {
+        this.manager = manager;
+        this.entry = entry;
+    }
+
+    @Override
+    public Downloader createDownloader() {
+        final Downloader downloader = manager.createDownloader();
+        return new Downloader() {
+            @Override
+            public void await() throws InterruptedException, MultiException {
+                long start = System.nanoTime();
+                try {
+                    downloader.await();
+                } finally {
+                    entry.addDownloadTime((System.nanoTime() - start) / 1000000);
+                }
+            }
+
+            @Override
+            public void download(String location, DownloadCallback downloadCallback) throws MalformedURLException {
+                downloader.download(location, downloadCallback);
+            }
+        };
+    }
+
+    @Override
+    public Map<String, StreamProvider> getProviders() {
+        return manager.getProviders();
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.tooling.verify;
+
+import java.util.List;
+import java.util.Map;
+
+import org.apache.felix.resolver.ResolverImpl;
+import org.apache.karaf.tooling.utils.Instrumentation;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+import org.osgi.resource.Wire;
+import org.osgi.resource.Wiring;
+import org.osgi.service.resolver.ResolutionException;
+import org.osgi.service.resolver.ResolveContext;
+import org.osgi.service.resolver.Resolver;
+
+/**
+ * A resolver recording the time spent resolving and the number of resources in the resolution into a
+ * report entry.
+ */
+public class TimingResolver implements Resolver {
+
+    private final ResolverImpl resolver;
+    private final VerificationReport.Entry entry;
+
+    public TimingResolver(ResolverImpl resolver, VerificationReport.Entry entry) {
+        this.resolver = resolver;
+        this.entry = entry;
+    }
+
+    @Override
+    public Map<Resource, List<Wire>> resolve(ResolveContext context) throws ResolutionException {
+        long start = System.nanoTime();
+        try (Instrumentation.Span span = Instrumentation.start(Instrumentation.Kind.RESOLUTION, entry.getId())) {
+            Map<Resource, List<Wire>> wiring = resolver.resolve(context);
+            entry.setResources(wiring.size());
+            span.setSize(wiring.size());
+            return wiring;
+        } finally {
+            entry.addResolverTime((System.nanoTime() - start) / 1000000);
+        }
+    }
+
+    public Map<Resource, List<Wire>> resolveDynamic(ResolveContext context, Wiring hostWiring, Requirement dynamicRequirement) throws ResolutionException {
+        long start = System.nanoTime();
+        try (Instrumentation.Span span = Instrumentation.start(Instrumentation.Kind.RESOLUTION, entry.getId())) {
+            return resolver.resolveDynamic(context, hostWiring, dynamicRequirement);
+        } finally {
+            entry.addResolverTime((System.nanoTime() - start) / 1000000);
+        }
+    }
+
+}
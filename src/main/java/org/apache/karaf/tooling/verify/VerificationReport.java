@@ -0,0 +1,291 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.tooling.verify;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * <p>A machine readable report of a verification run, with one entry per verified feature and conditional, and
+ * per target when several targets are verified.</p>
+ *
+ * <p>The report can be written either as JSON or as XML.</p>
+ */
+public class VerificationReport {
+
+    public static final String SUCCESS = "success";
+    public static final String FAILURE = "failure";
+    public static final String IGNORED = "ignored";
+    public static final String SKIPPED = "skipped";
+    public static final String BISECTED = "bisected";
+
+    /**
+     * The outcome and the timings of the verification of a feature, or of a feature with a conditional.
+     * Times are in milliseconds.
+     */
+    public static class Entry {
+        private final String id;
+        private final String type;
+        private String target;
+        private String outcome;
+        private String message;
+        private long wallTime;
+        private long resolverTime;
+        private long downloadTime;
+        private int resources;
+        private int bundles;
+
+        public Entry(String id, String type) {
+            this.id = id;
+            this.type = type;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getTarget() {
+            return target;
+        }
+
+        public void setTarget(String target) {
+            this.target = target;
+        }
+
+        public String getOutcome() {
+            return outcome;
+        }
+
+        public void setOutcome(String outcome) {
+            this.outcome = outcome;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public void setMessage(String message) {
+            this.message = message;
+        }
+
+        public long getWallTime() {
+            return wallTime;
+        }
+
+        public void setWallTime(long wallTime) {
+            this.wallTime = wallTime;
+        }
+
+        public long getResolverTime() {
+            return resolverTime;
+        }
+
+        public void addResolverTime(long resolverTime) {
+            this.resolverTime += resolverTime;
+        }
+
+        public long getDownloadTime() {
+            return downloadTime;
+        }
+
+        public void addDownloadTime(long downloadTime) {
+            this.downloadTime += downloadTime;
+        }
+
+        public int getResources() {
+            return resources;
+        }
+
+        public void setResources(int resources) {
+            this.resources = resources;
+        }
+
+        public int getBundles() {
+            return bundles;
+        }
+
+        public void setBundles(int bundles) {
+            this.bundles = bundles;
+        }
+    }
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    public synchronized void addAll(Collection<Entry> entries) {
+        this.entries.addAll(entries);
+    }
+
+    public synchronized List<Entry> getEntries() {
+        return new ArrayList<>(entries);
+    }
+
+    /**
+     * Write the report.
+     *
+     * @param file the file to write
+     * @param format either <code>json</code> or <code>xml</code>
+     * @throws IOException if the file can not be written
+     */
+    public void write(File file, String format) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create directory " + dir);
+        }
+        try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            if ("xml".equalsIgnoreCase(format)) {
+                writeXml(writer);
+            } else if ("json".equalsIgnoreCase(format)) {
+                writeJson(writer);
+            } else {
+                throw new IOException("Unsupported report format: " + format);
+            }
+        }
+    }
+
+    private void writeJson(PrintWriter writer) {
+        List<Entry> entries = getEntries();
+        writer.println("{");
+        writer.println("  \"entries\": [");
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            writer.print("    {");
+            writer.print("\"id\": " + json(entry.id));
+            writer.print(", \"type\": " + json(entry.type));
+            if (entry.target != null) {
+                writer.print(", \"target\": " + json(entry.target));
+            }
+            writer.print(", \"outcome\": " + json(entry.outcome));
+            writer.print(", \"wallTime\": " + entry.wallTime);
+            writer.print(", \"resolverTime\": " + entry.resolverTime);
+            writer.print(", \"downloadTime\": " + entry.downloadTime);
+            writer.print(", \"resources\": " + entry.resources);
+            writer.print(", \"bundles\": " + entry.bundles);
+            if (entry.message != null) {
+                writer.print(", \"message\": " + json(entry.message));
+            }
+            writer.println(i < entries.size() - 1 ? "}," : "}");
+        }
+        writer.println("  ]");
+        writer.println("}");
+    }
+
+    private void writeXml(PrintWriter writer) {
+        writer.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+        writer.println("<verification>");
+        for (Entry entry : getEntries()) {
+            writer.print("    <entry");
+            writer.print(" id=\"" + xml(entry.id) + "\"");
+            writer.print(" type=\"" + xml(entry.type) + "\"");
+            if (entry.target != null) {
+                writer.print(" target=\"" + xml(entry.target) + "\"");
+            }
+            writer.print(" outcome=\"" + xml(entry.outcome) + "\"");
+            writer.print(" wallTime=\"" + entry.wallTime + "\"");
+            writer.print(" resolverTime=\"" + entry.resolverTime + "\"");
+            writer.print(" downloadTime=\"" + entry.downloadTime + "\"");
+            writer.print(" resources=\"" + entry.resources + "\"");
+            writer.print(" bundles=\"" + entry.bundles + "\"");
+            if (entry.message != null) {
+                writer.println(">");
+                writer.println("        <message>" + xml(entry.message) + "</message>");
+                writer.println("    </entry>");
+            } else {
+                writer.println("/>");
+            }
+        }
+        writer.println("</verification>");
+    }
+
+    static String json(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '"':
+                sb.append("\\\"");
+                break;
+            case '\\':
+                sb.append("\\\\");
+                break;
+            case '\n':
+                sb.append("\\n");
+                break;
+            case '\r':
+                sb.append("\\r");
+                break;
+            case '\t':
+                sb.append("\\t");
+                break;
+            default:
+                if (c < 0x20) {
+                    sb.append(String.format("\\u%04x", (int) c));
+                } else {
+                    sb.append(c);
+                }
+            }
+        }
+        return sb.append("\"").toString();
+    }
+
+    static String xml(String value) {
+        if (value == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '<':
+                sb.append("&lt;");
+                break;
+            case '>':
+                sb.append("&gt;");
+                break;
+            case '&':
+                sb.append("&amp;");
+                break;
+            case '"':
+                sb.append("&quot;");
+                break;
+            default:
+                if (c < 0x20 && c != '\n' && c != '\r' && c != '\t') {
+                    sb.append(' ');
+                } else {
+                    sb.append(c);
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.tooling.verify;
+
+import java.util.Set;
+
+/**
+ * A combination of java version, framework features and Karaf distribution the features are verified against.
+ * Unset values default to the ones configured on the verify goal.
+ */
+public class VerificationTarget {
+
+    private String name;
+    private String javase;
+    private Set<String> framework;
+    private String distribution;
+    private String configuration;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getJavase() {
+        return javase;
+    }
+
+    public void setJavase(String javase) {
+        this.javase = javase;
+    }
+
+    public Set<String> getFramework() {
+        return framework;
+    }
+
+    public void setFramework(Set<String> framework) {
+        this.framework = framework;
+    }
+
+    public String getDistribution() {
+        return distribution;
+    }
+
+    /**
+     * @param distribution the <code>groupId:artifactId</code> of a project dependency, or the <code>mvn:</code> url
+     *                     of the distribution archive
+     */
+    public void setDistribution(String distribution) {
+        this.distribution = distribution;
+    }
+
+    public String getConfiguration() {
+        return configuration;
+    }
+
+    public void setConfiguration(String configuration) {
+        this.configuration = configuration;
+    }
+
+}
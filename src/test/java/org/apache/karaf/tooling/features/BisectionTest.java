@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.tooling.features;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.karaf.tooling.verify.Bisection;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class BisectionTest {
+
+    private static final List<Integer> ITEMS = Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8);
+
+    @Test
+    public void testSuccess() {
+        Recorder check = new Recorder() {
+            @Override
+            protected boolean succeeds(List<Integer> items) {
+                return true;
+            }
+        };
+        assertEquals(Collections.emptyList(), Bisection.bisect(ITEMS, check));
+        assertEquals(1, check.batches.size());
+    }
+
+    @Test
+    public void testIsolatedFailure() {
+        Recorder check = new Recorder() {
+            @Override
+            protected boolean succeeds(List<Integer> items) {
+                return !items.contains(3);
+            }
+        };
+        assertEquals(Collections.singletonList(Collections.singletonList(3)), Bisection.bisect(ITEMS, check));
+        assertEquals(Arrays.asList(ITEMS, Arrays.asList(1, 2, 3, 4), Arrays.asList(1, 2), Arrays.asList(3, 4),
+                Arrays.asList(3), Arrays.asList(4), Arrays.asList(5, 6, 7, 8)), check.batches);
+    }
+
+    @Test
+    public void testCombinedFailures() {
+        Recorder check = new Recorder() {
+            @Override
+            protected boolean succeeds(List<Integer> items) {
+                return !items.contains(5) && !(items.contains(1) && items.contains(2));
+            }
+        };
+        assertEquals(Arrays.asList(Arrays.asList(1, 2), Arrays.asList(5)), Bisection.bisect(ITEMS, check));
+    }
+
+    @Test
+    public void testConflictAcrossHalves() {
+        Recorder check = new Recorder() {
+            @Override
+            protected boolean succeeds(List<Integer> items) {
+                return !(items.contains(2) && items.contains(7));
+            }
+        };
+        // each half succeeds, so the whole batch is reported
+        assertEquals(Collections.singletonList(ITEMS), Bisection.bisect(ITEMS, check));
+    }
+
+    private abstract static class Recorder implements Bisection.Check<Integer> {
+        private final List<List<Integer>> batches = new ArrayList<>();
+
+        @Override
+        public boolean verify(List<Integer> items) {
+            batches.add(new ArrayList<>(items));
+            return succeeds(items);
+        }
+
+        protected abstract boolean succeeds(List<Integer> items);
+    }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.tooling.features;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.karaf.features.internal.resolver.ResourceBuilder;
+import org.apache.karaf.features.internal.resolver.ResourceImpl;
+import org.apache.karaf.tooling.verify.CapabilityIndex;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class CapabilityIndexTest {
+
+    private static final String LOCATION = "mvn:test/test.a/1.0.0";
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testSameResourceAsBuilder() throws Exception {
+        Map<String, String> headers = getHeaders();
+        CapabilityIndex index = new CapabilityIndex(null);
+        ResourceImpl first = new ResourceImpl();
+        index.build(first, LOCATION, headers);
+        ResourceImpl second = new ResourceImpl();
+        index.build(second, LOCATION, headers);
+
+        assertSameResource(ResourceBuilder.build(LOCATION, headers), first);
+        assertSameResource(first, second);
+        assertSame(second, second.getCapabilities(null).get(0).getResource());
+        assertSame(first.getRequirements(null).get(0).getAttributes(), second.getRequirements(null).get(0).getAttributes());
+        assertEquals(1, index.getMisses());
+        assertEquals(1, index.getHits());
+    }
+
+    @Test
+    public void testPersistence() throws Exception {
+        Map<String, String> headers = getHeaders();
+        File file = new File(tmp.getRoot(), "index/capability.index");
+        CapabilityIndex index = new CapabilityIndex(file);
+        index.build(new ResourceImpl(), LOCATION, headers);
+        index.save();
+
+        index = new CapabilityIndex(file);
+        index.load();
+        ResourceImpl resource = new ResourceImpl();
+        index.build(resource, LOCATION, headers);
+        assertSameResource(ResourceBuilder.build(LOCATION, headers), resource);
+        assertEquals(0, index.getMisses());
+
+        headers.put("Bundle-Version", "1.0.1");
+        index.build(new ResourceImpl(), LOCATION, headers);
+        assertEquals(1, index.getMisses());
+    }
+
+    private static Map<String, String> getHeaders() {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Bundle-ManifestVersion", "2");
+        headers.put("Bundle-SymbolicName", "test.a");
+        headers.put("Bundle-Version", "1.0.0");
+        headers.put("Export-Package", "test.a;version=\"1.0.0\";uses:=\"test.b\"");
+        headers.put("Import-Package", "test.b;version=\"[1,2)\",test.c;resolution:=optional");
+        headers.put("Require-Capability", "osgi.ee;filter:=\"(&(osgi.ee=JavaSE)(version=1.7))\"");
+        return headers;
+    }
+
+    private static void assertSameResource(ResourceImpl expected, ResourceImpl actual) {
+        List<Capability> expectedCaps = expected.getCapabilities(null);
+        List<Capability> actualCaps = actual.getCapabilities(null);
+        assertEquals(expectedCaps.size(), actualCaps.size());
+        for (int i = 0; i < expectedCaps.size(); i++) {
+            assertEquals(expectedCaps.get(i).getNamespace(), actualCaps.get(i).getNamespace());
+            assertEquals(expectedCaps.get(i).getDirectives(), actualCaps.get(i).getDirectives());
+            assertEquals(expectedCaps.get(i).getAttributes(), actualCaps.get(i).getAttributes());
+        }
+        List<Requirement> expectedReqs = expected.getRequirements(null);
+        List<Requirement> actualReqs = actual.getRequirements(null);
+        assertEquals(expectedReqs.size(), actualReqs.size());
+        for (int i = 0; i < expectedReqs.size(); i++) {
+            assertEquals(expectedReqs.get(i).getNamespace(), actualReqs.get(i).getNamespace());
+            assertEquals(expectedReqs.get(i).getDirectives(), actualReqs.get(i).getDirectives());
+            assertEquals(expectedReqs.get(i).getAttributes(), actualReqs.get(i).getAttributes());
+        }
+    }
+
+}
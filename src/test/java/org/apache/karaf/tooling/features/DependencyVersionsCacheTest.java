@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.tooling.features;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.karaf.tooling.utils.DependencyVersionsCache;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class DependencyVersionsCacheTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testShared() {
+        Object build = new Object();
+        DependencyVersionsCache cache = DependencyVersionsCache.shared(build);
+        assertSame(cache, DependencyVersionsCache.shared(build));
+        assertNotSame(cache, DependencyVersionsCache.shared(new Object()));
+
+        assertNull(cache.get("sha"));
+        cache.put("sha", versions("org.foo:bar", "[1,2)"), true);
+        assertEquals("[1,2)", DependencyVersionsCache.shared(build).get("sha").get("org.foo:bar"));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testPersistence() throws Exception {
+        File file = new File(tmp.getRoot(), "cache/versions.cache");
+        DependencyVersionsCache cache = new DependencyVersionsCache();
+        cache.put("release", versions("org.foo:bar", "[1,2)"), true);
+        cache.put("snapshot", versions("org.foo:baz", "1.0-SNAPSHOT"), false);
+        cache.save(file);
+
+        cache = new DependencyVersionsCache();
+        cache.load(file);
+        assertEquals("[1,2)", cache.get("release").get("org.foo:bar"));
+        assertNull(cache.get("snapshot"));
+    }
+
+    @Test
+    public void testLoadOnce() throws Exception {
+        File file = new File(tmp.getRoot(), "versions.cache");
+        DependencyVersionsCache cache = new DependencyVersionsCache();
+        cache.put("release", versions("org.foo:bar", "[1,2)"), true);
+        cache.save(file);
+
+        DependencyVersionsCache other = new DependencyVersionsCache();
+        other.load(file);
+        other.put("release", versions("org.foo:bar", "[2,3)"), true);
+        // the tables computed during the build are not overridden by the file
+        other.load(file);
+        assertEquals("[2,3)", other.get("release").get("org.foo:bar"));
+    }
+
+    private static Map<String, String> versions(String key, String version) {
+        return Collections.singletonMap(key, version);
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.tooling.features;
+
+import java.util.Hashtable;
+
+import org.apache.karaf.tooling.VerifyMojo;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Constants;
+import org.osgi.framework.Version;
+import org.osgi.framework.startlevel.BundleStartLevel;
+import org.osgi.framework.wiring.BundleRevision;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class FakeBundleTest {
+
+    @Test
+    public void testFakeBundle() throws Exception {
+        VerifyMojo.FakeBundleRevision revision = new VerifyMojo.FakeBundleRevision(
+                getHeaders(1), "mvn:test/test.bundle1/1.0.1", 3l);
+        Bundle bundle = revision.getBundle();
+        assertEquals("test.bundle1", bundle.getSymbolicName());
+        assertEquals(new Version(1, 0, 1), bundle.getVersion());
+        assertEquals(3l, bundle.getBundleId());
+        assertEquals("mvn:test/test.bundle1/1.0.1", bundle.getLocation());
+        assertEquals("test.bundle1/1.0.1", bundle.toString());
+        assertEquals(Bundle.ACTIVE, bundle.getState());
+        assertSame(revision, bundle.adapt(BundleRevision.class));
+        assertSame(revision, bundle.adapt(BundleStartLevel.class));
+        assertNull(bundle.adapt(String.class));
+        assertEquals("test.bundle1", revision.getSymbolicName());
+        assertEquals(revision.hashCode(), bundle.hashCode());
+    }
+
+    @Test
+    public void testLocalizedHeaders() throws Exception {
+        Bundle bundle = new VerifyMojo.FakeBundleRevision(getHeaders(1), "mvn:test/test.bundle1/1.0.1", 3l).getBundle();
+        // manifests are not localized, the raw headers are returned for any locale
+        assertSame(bundle.getHeaders(), bundle.getHeaders("fr"));
+        assertSame(bundle.getHeaders(), bundle.getHeaders(null));
+    }
+
+    @Test
+    public void testNoVersion() throws Exception {
+        Hashtable<String, String> headers = getHeaders(1);
+        headers.remove(Constants.BUNDLE_VERSION);
+        Bundle bundle = new VerifyMojo.FakeBundle(null, headers, "mvn:test/test.bundle1/1.0.1", 3l);
+        assertEquals(Version.emptyVersion, bundle.getVersion());
+        assertEquals("test.bundle1/0.0.0", bundle.toString());
+    }
+
+    private static Hashtable<String, String> getHeaders(int i) {
+        Hashtable<String, String> headers = new Hashtable<>();
+        headers.put(Constants.BUNDLE_MANIFESTVERSION, "2");
+        headers.put(Constants.BUNDLE_SYMBOLICNAME, "test.bundle" + i + ";singleton:=true");
+        headers.put(Constants.BUNDLE_VERSION, "1.0.1");
+        headers.put(Constants.EXPORT_PACKAGE, "test.bundle" + i + ";version=\"1.0.1\"");
+        return headers;
+    }
+
+}
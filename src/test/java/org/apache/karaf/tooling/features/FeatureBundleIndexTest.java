@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.tooling.features;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.karaf.features.internal.model.Bundle;
+import org.apache.karaf.features.internal.model.Dependency;
+import org.apache.karaf.features.internal.model.Feature;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FeatureBundleIndexTest {
+
+    @Test
+    public void testTransitiveBundles() {
+        Map<Dependency, Feature> features = new HashMap<>();
+        Feature base = feature(features, "base", "mvn:org.foo/base/1.0");
+        Feature middle = feature(features, "middle", "mvn:org.foo/middle/1.0");
+        middle.getFeature().add(new Dependency("base", "1.0"));
+        Feature top = feature(features, "top");
+        top.getFeature().add(new Dependency("middle", "1.0"));
+        top.getFeature().add(new Dependency("unknown", "1.0"));
+
+        FeatureBundleIndex index = new FeatureBundleIndex(features);
+        assertTrue(index.isIncludedTransitively(top, bundle("mvn:org.foo/base/1.0")));
+        assertTrue(index.isIncludedTransitively(top, bundle("mvn:org.foo/middle/1.0")));
+        assertFalse(index.isIncludedTransitively(top, bundle("mvn:org.foo/other/1.0")));
+        // the bundles of the feature itself are not included by its dependencies
+        assertFalse(index.isIncludedTransitively(middle, bundle("mvn:org.foo/middle/1.0")));
+        assertFalse(index.isIncludedTransitively(base, bundle("mvn:org.foo/base/1.0")));
+    }
+
+    @Test
+    public void testCycle() {
+        Map<Dependency, Feature> features = new HashMap<>();
+        Feature a = feature(features, "a", "mvn:org.foo/a/1.0");
+        Feature b = feature(features, "b", "mvn:org.foo/b/1.0");
+        a.getFeature().add(new Dependency("b", "1.0"));
+        b.getFeature().add(new Dependency("a", "1.0"));
+
+        FeatureBundleIndex index = new FeatureBundleIndex(features);
+        assertTrue(index.isIncludedTransitively(a, bundle("mvn:org.foo/b/1.0")));
+        assertTrue(index.isIncludedTransitively(b, bundle("mvn:org.foo/b/1.0")));
+    }
+
+    @Test
+    public void testCycleWithDependencyOutside() {
+        Map<Dependency, Feature> features = new HashMap<>();
+        Feature a = feature(features, "a", "mvn:org.foo/a/1.0");
+        Feature b = feature(features, "b", "mvn:org.foo/b/1.0");
+        Feature c = feature(features, "c", "mvn:org.foo/c/1.0");
+        a.getFeature().add(new Dependency("b", "1.0"));
+        a.getFeature().add(new Dependency("c", "1.0"));
+        b.getFeature().add(new Dependency("a", "1.0"));
+        Feature top = feature(features, "top");
+        top.getFeature().add(new Dependency("a", "1.0"));
+        Feature other = feature(features, "other");
+        other.getFeature().add(new Dependency("b", "1.0"));
+
+        FeatureBundleIndex index = new FeatureBundleIndex(features);
+        assertTrue(index.isIncludedTransitively(top, bundle("mvn:org.foo/c/1.0")));
+        // b includes c through a, although b is walked before a reaches c
+        assertTrue(index.isIncludedTransitively(other, bundle("mvn:org.foo/c/1.0")));
+        assertTrue(index.isIncludedTransitively(a, bundle("mvn:org.foo/b/1.0")));
+    }
+
+    @Test
+    public void testCycleWithSideBranch() {
+        Map<Dependency, Feature> features = new HashMap<>();
+        Feature x = feature(features, "x", "mvn:org.foo/x/1.0");
+        Feature y = feature(features, "y", "mvn:org.foo/y/1.0");
+        Feature z = feature(features, "z", "mvn:org.foo/z/1.0");
+        Feature side = feature(features, "side", "mvn:org.foo/side/1.0");
+        x.getFeature().add(new Dependency("y", "1.0"));
+        y.getFeature().add(new Dependency("z", "1.0"));
+        y.getFeature().add(new Dependency("side", "1.0"));
+        z.getFeature().add(new Dependency("x", "1.0"));
+        Feature top = feature(features, "top");
+        top.getFeature().add(new Dependency("z", "1.0"));
+
+        FeatureBundleIndex index = new FeatureBundleIndex(features);
+        for (Feature feature : new Feature[] { top, x, y, z }) {
+            for (String name : new String[] { "x", "y", "z", "side" }) {
+                assertTrue(feature.getName() + " includes " + name,
+                        index.isIncludedTransitively(feature, bundle("mvn:org.foo/" + name + "/1.0")));
+            }
+        }
+        assertFalse(index.isIncludedTransitively(side, bundle("mvn:org.foo/x/1.0")));
+        assertFalse(index.isIncludedTransitively(top, bundle("mvn:org.foo/top/1.0")));
+    }
+
+    private static Feature feature(Map<Dependency, Feature> features, String name, String... locations) {
+        Feature feature = new Feature();
+        feature.setName(name);
+        feature.setVersion("1.0");
+        for (String location : locations) {
+            feature.getBundle().add(bundle(location));
+        }
+        features.put(new Dependency(name, "1.0"), feature);
+        return feature;
+    }
+
+    private static Bundle bundle(String location) {
+        Bundle bundle = new Bundle();
+        bundle.setLocation(location);
+        return bundle;
+    }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.tooling.features;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.karaf.features.internal.download.DownloadCallback;
+import org.apache.karaf.features.internal.download.DownloadManager;
+import org.apache.karaf.features.internal.download.Downloader;
+import org.apache.karaf.features.internal.download.StreamProvider;
+import org.apache.karaf.tooling.verify.FeatureFingerprints;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FeatureFingerprintsTest {
+
+    private static final String ID = "foo/1.0";
+    private static final String DEFINITION = "<features><feature name=\"foo\" version=\"1.0\"/></features>";
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testRecordAndIsUpToDate() throws Exception {
+        File directory = tmp.newFolder("fingerprints");
+        Map<String, File> files = new HashMap<>();
+        files.put("mvn:org.foo/a/1.0", write(tmp.newFile("a.jar"), "a"));
+        files.put("mvn:org.foo/b/1.0", write(tmp.newFile("b.jar"), "b"));
+
+        FeatureFingerprints fingerprints = new FeatureFingerprints(directory, "context", manager(files));
+        assertFalse(fingerprints.isUpToDate(ID, DEFINITION));
+        fingerprints.record(ID, DEFINITION, files.keySet());
+        assertTrue(fingerprints.isUpToDate(ID, DEFINITION));
+
+        // a later build reads the recorded fingerprint
+        FeatureFingerprints next = new FeatureFingerprints(directory, "context", manager(files));
+        assertTrue(next.isUpToDate(ID, DEFINITION));
+        assertFalse(next.isUpToDate(ID, DEFINITION.replace("1.0", "1.1")));
+        assertFalse(next.isUpToDate("bar/1.0", DEFINITION));
+        assertFalse(new FeatureFingerprints(directory, "other context", manager(files)).isUpToDate(ID, DEFINITION));
+    }
+
+    @Test
+    public void testChangedBundleChecksum() throws Exception {
+        File directory = tmp.newFolder("fingerprints");
+        File bundle = write(tmp.newFile("a.jar"), "a");
+        Map<String, File> files = new HashMap<>();
+        files.put("mvn:org.foo/a/1.0", bundle);
+
+        new FeatureFingerprints(directory, "context", manager(files)).record(ID, DEFINITION, files.keySet());
+        assertTrue(new FeatureFingerprints(directory, "context", manager(files)).isUpToDate(ID, DEFINITION));
+
+        // same location, new content
+        write(bundle, "changed");
+        assertFalse(new FeatureFingerprints(directory, "context", manager(files)).isUpToDate(ID, DEFINITION));
+    }
+
+    @Test
+    public void testMissingBundle() throws Exception {
+        File directory = tmp.newFolder("fingerprints");
+        Map<String, File> files = new HashMap<>();
+        files.put("mvn:org.foo/a/1.0", write(tmp.newFile("a.jar"), "a"));
+
+        new FeatureFingerprints(directory, "context", manager(files)).record(ID, DEFINITION, files.keySet());
+        // the bundle can not be downloaded anymore
+        assertFalse(new FeatureFingerprints(directory, "context", manager(new HashMap<String, File>())).isUpToDate(ID, DEFINITION));
+    }
+
+    private static File write(File file, String content) throws IOException {
+        try (OutputStream os = new FileOutputStream(file)) {
+            os.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return file;
+    }
+
+    /**
+     * A download manager which synchronously provides the given files, by location.
+     */
+    private DownloadManager manager(final Map<String, File> files) {
+        final Downloader downloader = proxy(Downloader.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("download")) {
+                    final File file = files.get(args[0]);
+                    if (file == null) {
+                        throw new IllegalStateException("Unable to download " + args[0]);
+                    }
+                    ((DownloadCallback) args[1]).downloaded(proxy(StreamProvider.class, new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                            if (method.getName().equals("getFile")) {
+                                return file;
+                            }
+                            throw new UnsupportedOperationException(method.getName() + Arrays.toString(args));
+                        }
+                    }));
+                }
+                return null;
+            }
+        });
+        return proxy(DownloadManager.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("createDownloader")) {
+                    return downloader;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { type }, handler));
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.tooling.features;
+
+import java.util.Arrays;
+
+import org.apache.karaf.features.internal.model.Bundle;
+import org.apache.karaf.features.internal.model.Dependency;
+import org.apache.karaf.features.internal.model.Feature;
+import org.apache.karaf.features.internal.model.Features;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class IndexedFeaturesTest {
+
+    @Test
+    public void testFeaturesAndRepositories() {
+        Features features = new Features();
+        features.getRepository().add("mvn:org.foo/a/1.0/xml/features");
+        Feature a = feature("a");
+        features.getFeature().add(a);
+
+        IndexedFeatures indexed = new IndexedFeatures(features);
+        assertTrue(indexed.containsFeature(a));
+        Feature b = feature("b");
+        assertFalse(indexed.containsFeature(b));
+        indexed.addFeature(b);
+        assertTrue(indexed.containsFeature(b));
+
+        indexed.addRepository("mvn:org.foo/b/1.0/xml/features");
+        indexed.addRepository("mvn:org.foo/a/1.0/xml/features");
+        assertEquals(Arrays.asList(a, b), features.getFeature());
+        assertEquals(Arrays.asList("mvn:org.foo/a/1.0/xml/features", "mvn:org.foo/b/1.0/xml/features"),
+                features.getRepository());
+    }
+
+    @Test
+    public void testDependenciesAndBundles() {
+        Feature feature = feature("a");
+        Bundle existing = bundle("mvn:org.foo/a/1.0");
+        feature.getBundle().add(existing);
+
+        IndexedFeatures.IndexedFeature indexed = new IndexedFeatures.IndexedFeature(feature);
+        indexed.addDependency(new Dependency("b", "1.0"));
+        indexed.addDependency(new Dependency("c", "1.0"));
+        indexed.addDependency(new Dependency("b", "1.0"));
+        assertEquals(Arrays.asList(new Dependency("b", "1.0"), new Dependency("c", "1.0")), feature.getFeature());
+
+        assertSame(existing, indexed.getBundle("mvn:org.foo/a/1.0"));
+        assertNull(indexed.getBundle("mvn:org.foo/b/1.0"));
+        Bundle added = bundle("mvn:org.foo/b/1.0");
+        indexed.addBundle(added);
+        assertSame(added, indexed.getBundle("mvn:org.foo/b/1.0"));
+        assertEquals(Arrays.asList(existing, added), feature.getBundle());
+    }
+
+    private static Feature feature(String name) {
+        Feature feature = new Feature();
+        feature.setName(name);
+        feature.setVersion("1.0");
+        return feature;
+    }
+
+    private static Bundle bundle(String location) {
+        Bundle bundle = new Bundle();
+        bundle.setLocation(location);
+        return bundle;
+    }
+
+}
@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.tooling.features;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.apache.karaf.tooling.utils.Instrumentation;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class InstrumentationTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testSpan() {
+        Instrumentation.Span span = Instrumentation.start(Instrumentation.Kind.MANIFEST_READ, "test.jar");
+        try {
+            span.setSize(42);
+        } finally {
+            span.close();
+        }
+        assertEquals(Instrumentation.Kind.MANIFEST_READ, span.getKind());
+        assertEquals("test.jar", span.getSubject());
+        assertEquals(42, span.getSize());
+        // closing twice must not fail
+        span.close();
+    }
+
+    @Test
+    public void testTrace() throws Exception {
+        Object build = new Object();
+        File file = new File(tmp.getRoot(), "trace/trace.json");
+        Instrumentation.Trace trace = Instrumentation.trace(build, file);
+        assertSame(trace, Instrumentation.trace(build, new File(tmp.getRoot(), "other.json")));
+        Instrumentation.Trace previous = Instrumentation.attach(trace);
+        try {
+            try (Instrumentation.Span goal = Instrumentation.start("karaf:test \"module\"")) {
+                try (Instrumentation.Span span = Instrumentation.start(Instrumentation.Kind.DIRECTORY_COPY, "src")) {
+                    span.setSize(1024);
+                }
+            }
+        } finally {
+            Instrumentation.attach(previous);
+        }
+        trace.flush();
+        String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        assertTrue(content.startsWith("[\n"));
+        assertTrue(content.contains("\"name\":\"karaf:test \\\"module\\\"\",\"cat\":\"Phase\",\"ph\":\"X\""));
+        assertTrue(content.contains("\"name\":\"Directory Copy\",\"cat\":\"DirectoryCopy\",\"ph\":\"X\""));
+        assertTrue(content.contains("\"args\":{\"subject\":\"src\",\"size\":1024}"));
+
+        // only the new spans are appended
+        previous = Instrumentation.attach(trace);
+        try (Instrumentation.Span goal = Instrumentation.start("karaf:other")) {
+            goal.setSize(1);
+        } finally {
+            Instrumentation.attach(previous);
+        }
+        trace.flush();
+        String appended = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        assertTrue(appended.startsWith(content + ",\n"));
+        assertEquals(1, count(appended, "\"name\":\"Directory Copy\""));
+        assertEquals(1, count(appended, "\"name\":\"karaf:other\""));
+    }
+
+    @Test
+    public void testTracesOfConcurrentBuilds() throws Exception {
+        File file1 = new File(tmp.getRoot(), "build1.json");
+        File file2 = new File(tmp.getRoot(), "build2.json");
+        final Instrumentation.Trace trace1 = Instrumentation.trace(new Object(), file1);
+        Instrumentation.Trace trace2 = Instrumentation.trace(new Object(), file2);
+        assertNotSame(trace1, trace2);
+
+        Instrumentation.Trace previous = Instrumentation.attach(trace1);
+        try (Instrumentation.Span goal = Instrumentation.start("karaf:build1")) {
+            // threads started by the goal record their spans in the same trace
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try (Instrumentation.Span span = Instrumentation.start(Instrumentation.Kind.MANIFEST_READ, "worker.jar")) {
+                        span.setSize(1);
+                    }
+                }
+            };
+            thread.start();
+            thread.join();
+        } finally {
+            Instrumentation.attach(previous);
+        }
+        previous = Instrumentation.attach(trace2);
+        try (Instrumentation.Span goal = Instrumentation.start("karaf:build2")) {
+            goal.setSize(2);
+        } finally {
+            Instrumentation.attach(previous);
+        }
+        // spans of a thread without a trace are not recorded
+        try (Instrumentation.Span span = Instrumentation.start("karaf:untraced")) {
+            span.setSize(3);
+        }
+        trace1.flush();
+        trace2.flush();
+
+        String content1 = new String(Files.readAllBytes(file1.toPath()), StandardCharsets.UTF_8);
+        String content2 = new String(Files.readAllBytes(file2.toPath()), StandardCharsets.UTF_8);
+        assertEquals(1, count(content1, "\"name\":\"karaf:build1\""));
+        assertEquals(1, count(content1, "\"subject\":\"worker.jar\""));
+        assertEquals(0, count(content1, "karaf:build2"));
+        assertEquals(1, count(content2, "\"name\":\"karaf:build2\""));
+        assertEquals(0, count(content2, "karaf:build1"));
+        assertEquals(0, count(content2, "worker.jar"));
+        assertEquals(0, count(content1 + content2, "karaf:untraced"));
+    }
+
+    private static int count(String s, String part) {
+        int count = 0;
+        for (int i = s.indexOf(part); i >= 0; i = s.indexOf(part, i + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+}
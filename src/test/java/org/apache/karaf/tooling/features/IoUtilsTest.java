@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.tooling.features;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import org.apache.karaf.tooling.utils.IoUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class IoUtilsTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testWriteAtomically() throws Exception {
+        File file = new File(tmp.getRoot(), "cache/test.cache");
+        write(file, "first");
+        assertEquals("first", read(file));
+        write(file, "second");
+        assertEquals("second", read(file));
+        // no temporary file is left behind
+        assertArrayEquals(new String[] { "test.cache" }, file.getParentFile().list());
+    }
+
+    @Test
+    public void testFailedWriteKeepsFile() throws Exception {
+        File file = new File(tmp.getRoot(), "test.cache");
+        write(file, "first");
+        try {
+            IoUtils.writeAtomically(file, new IoUtils.ContentWriter() {
+                @Override
+                public void write(DataOutputStream dos) throws IOException {
+                    IoUtils.writeString(dos, "partial");
+                    throw new IOException("Failure");
+                }
+            });
+            fail("The write should fail");
+        } catch (IOException e) {
+            // expected
+        }
+        assertEquals("first", read(file));
+        assertArrayEquals(new String[] { "test.cache" }, file.getParentFile().list());
+    }
+
+    @Test
+    public void testLongString() throws Exception {
+        // longer than the 64k supported by DataOutput#writeUTF
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        File file = new File(tmp.getRoot(), "long.cache");
+        write(file, sb.toString());
+        assertEquals(sb.toString(), read(file));
+    }
+
+    private static void write(File file, final String value) throws IOException {
+        IoUtils.writeAtomically(file, new IoUtils.ContentWriter() {
+            @Override
+            public void write(DataOutputStream dos) throws IOException {
+                IoUtils.writeString(dos, value);
+            }
+        });
+    }
+
+    private static String read(File file) throws IOException {
+        try (DataInputStream dis = new DataInputStream(new FileInputStream(file))) {
+            return IoUtils.readString(dis);
+        }
+    }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.tooling.features;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import org.apache.karaf.tooling.utils.ManifestCache;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class ManifestCacheTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testHitsAndMisses() throws Exception {
+        File jar = createJar("test.a", "1.0.0");
+        ManifestCache cache = new ManifestCache(null, 10, false);
+
+        assertEquals("test.a", cache.getHeaders(jar).get("Bundle-SymbolicName"));
+        assertEquals("test.a", cache.getHeaders(jar).get("Bundle-SymbolicName"));
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void testInvalidation() throws Exception {
+        File jar = createJar("test.a", "1.0.0");
+        ManifestCache cache = new ManifestCache(null, 10, true);
+        assertEquals("1.0.0", cache.getHeaders(jar).get("Bundle-Version"));
+
+        writeJar(jar, "test.a", "2.0.0");
+        jar.setLastModified(jar.lastModified() + 2000);
+        assertEquals("2.0.0", cache.getHeaders(jar).get("Bundle-Version"));
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testRevalidation() throws Exception {
+        File jar = createJar("test.a", "1.0.0");
+        ManifestCache hashed = new ManifestCache(null, 10, true);
+        ManifestCache unhashed = new ManifestCache(null, 10, false);
+        hashed.getHeaders(jar);
+        unhashed.getHeaders(jar);
+
+        // same content, new modification time
+        jar.setLastModified(jar.lastModified() + 2000);
+        assertEquals("test.a", hashed.getHeaders(jar).get("Bundle-SymbolicName"));
+        assertEquals("test.a", unhashed.getHeaders(jar).get("Bundle-SymbolicName"));
+        assertEquals(1, hashed.getMisses());
+        assertEquals(1, hashed.getHits());
+        assertEquals(2, unhashed.getMisses());
+        assertEquals(0, unhashed.getHits());
+
+        // the revalidated entry is valid for the new modification time
+        hashed.getHeaders(jar);
+        assertEquals(2, hashed.getHits());
+    }
+
+    @Test
+    public void testPersistence() throws Exception {
+        File jar = createJar("test.a", "1.0.0");
+        File cacheFile = new File(tmp.getRoot(), "cache/manifest.cache");
+
+        ManifestCache cache = new ManifestCache(cacheFile, 10, false);
+        cache.getHeaders(jar);
+        cache.save();
+
+        cache = new ManifestCache(cacheFile, 10, false);
+        cache.load();
+        assertEquals("test.a", cache.getHeaders(jar).get("Bundle-SymbolicName"));
+        assertEquals(0, cache.getMisses());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        File a = createJar("test.a", "1.0.0");
+        File b = createJar("test.b", "1.0.0");
+        File c = createJar("test.c", "1.0.0");
+        ManifestCache cache = new ManifestCache(null, 2, false);
+
+        cache.getHeaders(a);
+        cache.getHeaders(b);
+        cache.getHeaders(a);
+        // b is the least recently used entry and gets evicted
+        cache.getHeaders(c);
+        cache.getHeaders(a);
+        assertEquals(3, cache.getMisses());
+        assertEquals(2, cache.getHits());
+        cache.getHeaders(b);
+        assertEquals(4, cache.getMisses());
+    }
+
+    @Test
+    public void testShared() throws Exception {
+        File jar = createJar("test.a", "1.0.0");
+        Object build = new Object();
+        ManifestCache cache = ManifestCache.shared(build);
+        assertSame(cache, ManifestCache.shared(build));
+        assertNotSame(cache, ManifestCache.shared(new Object()));
+
+        cache.getHeaders(jar);
+        ManifestCache.shared(build).getHeaders(jar);
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+    }
+
+    private File createJar(String bsn, String version) throws IOException {
+        File jar = tmp.newFile(bsn + ".jar");
+        writeJar(jar, bsn, version);
+        return jar;
+    }
+
+    private void writeJar(File jar, String bsn, String version) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().putValue("Bundle-SymbolicName", bsn);
+        manifest.getMainAttributes().putValue("Bundle-Version", version);
+        new JarOutputStream(new FileOutputStream(jar), manifest).close();
+    }
+
+}
@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.tooling.features;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.karaf.tooling.utils.ManifestReader;
+import org.junit.Ignore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static java.util.jar.JarFile.MANIFEST_NAME;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class ManifestReaderTest {
+
+    private static final byte[] MANIFEST = ("Manifest-Version: 1.0\r\n"
+            + "Bundle-SymbolicName: test.bundle\r\n"
+            + "Bundle-Version: 1.0.0\r\n\r\n").getBytes();
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testDeflatedManifestNotFirst() throws Exception {
+        File jar = tmp.newFile("deflated.jar");
+        try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(jar))) {
+            zos.putNextEntry(new ZipEntry("test/Foo.class"));
+            zos.write(new byte[4096]);
+            zos.putNextEntry(new ZipEntry(MANIFEST_NAME));
+            zos.write(MANIFEST);
+            zos.setComment("a comment");
+        }
+        assertEquals("test.bundle", ManifestReader.read(jar).getMainAttributes().getValue("Bundle-SymbolicName"));
+        try (InputStream is = new FileInputStream(jar)) {
+            assertEquals("test.bundle", ManifestReader.read(is).getMainAttributes().getValue("Bundle-SymbolicName"));
+        }
+    }
+
+    @Test
+    public void testStoredManifest() throws Exception {
+        File jar = tmp.newFile("stored.jar");
+        try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(jar))) {
+            zos.setMethod(ZipOutputStream.STORED);
+            ZipEntry entry = new ZipEntry(MANIFEST_NAME);
+            CRC32 crc = new CRC32();
+            crc.update(MANIFEST);
+            entry.setSize(MANIFEST.length);
+            entry.setCrc(crc.getValue());
+            zos.putNextEntry(entry);
+            zos.write(MANIFEST);
+        }
+        assertEquals("1.0.0", ManifestReader.read(jar).getMainAttributes().getValue("Bundle-Version"));
+    }
+
+    @Test
+    public void testNoManifest() throws Exception {
+        File jar = tmp.newFile("empty.jar");
+        try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(jar))) {
+            zos.putNextEntry(new ZipEntry("test/Foo.class"));
+        }
+        assertNull(ManifestReader.read(jar));
+
+        File text = tmp.newFile("text.txt");
+        try (FileOutputStream fos = new FileOutputStream(text)) {
+            fos.write("not a jar file, not a jar file".getBytes());
+        }
+        assertNull(ManifestReader.read(text));
+    }
+
+    /**
+     * Compares the central directory lookup with a sequential scan of a 50 MB bundle whose manifest is the
+     * last entry.
+     */
+    @Test
+    @Ignore("Benchmark")
+    public void benchmarkFatBundle() throws Exception {
+        File jar = tmp.newFile("fat.jar");
+        Random random = new Random(0);
+        byte[] data = new byte[64 * 1024];
+        try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(jar))) {
+            for (int i = 0; i < 800; i++) {
+                random.nextBytes(data);
+                zos.putNextEntry(new ZipEntry("lib/data-" + i + ".bin"));
+                zos.write(data);
+            }
+            zos.putNextEntry(new ZipEntry(MANIFEST_NAME));
+            zos.write(MANIFEST);
+        }
+
+        int iterations = 20;
+        for (int warmup = 0; warmup < 2; warmup++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                assertNotNull(ManifestReader.read(jar));
+            }
+            long centralDirectory = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                assertNotNull(readSequentially(jar));
+            }
+            long sequential = System.nanoTime() - start;
+
+            System.out.println(String.format("%d MB bundle: central directory %.3f ms, sequential %.3f ms",
+                    jar.length() / (1024 * 1024),
+                    centralDirectory / 1e6 / iterations, sequential / 1e6 / iterations));
+        }
+    }
+
+    private static Manifest readSequentially(File file) throws IOException {
+        Manifest manifest = null;
+        try (ZipInputStream zis = new ZipInputStream(new FileInputStream(file))) {
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                if (MANIFEST_NAME.equals(entry.getName())) {
+                    manifest = new Manifest(zis);
+                }
+            }
+        }
+        return manifest;
+    }
+
+}
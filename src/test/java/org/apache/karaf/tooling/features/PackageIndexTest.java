@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.tooling.features;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.felix.utils.manifest.Clause;
+import org.apache.karaf.tooling.verify.PackageIndex;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PackageIndexTest {
+
+    @Test
+    public void testMissingImports() {
+        PackageIndex index = new PackageIndex();
+        index.addExports(headers("a.bundle", "org.foo;version=1.2.0,org.bar;version=2.0.0", null));
+        index.addExports(headers("system.bundle", "javax.xml.parsers", null));
+
+        assertTrue(index.getMissingImports(headers("b.bundle", null,
+                "org.foo;version=\"[1,2)\",javax.xml.parsers,org.baz;resolution:=optional")).isEmpty());
+
+        List<Clause> missing = index.getMissingImports(headers("c.bundle", null,
+                "org.foo;version=\"[1,2)\",org.bar;version=\"[3,4)\",org.baz"));
+        assertEquals(2, missing.size());
+        assertEquals("org.bar", missing.get(0).getName());
+        assertEquals("org.baz", missing.get(1).getName());
+    }
+
+    private static Map<String, String> headers(String bsn, String exports, String imports) {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Bundle-ManifestVersion", "2");
+        headers.put("Bundle-SymbolicName", bsn);
+        if (exports != null) {
+            headers.put("Export-Package", exports);
+        }
+        if (imports != null) {
+            headers.put("Import-Package", imports);
+        }
+        return headers;
+    }
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.tooling.features;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.karaf.tooling.verify.ResolutionHistory;
+import org.apache.karaf.tooling.verify.VerificationReport;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ResolutionHistoryTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testRegressions() throws Exception {
+        File file = new File(tmp.getRoot(), "history.properties");
+        ResolutionHistory history = new ResolutionHistory(file, 5, 50, 100);
+        history.load();
+        for (long time : new long[] { 1000, 1100, 900 }) {
+            assertTrue(history.check(entries(time, 100), true).isEmpty());
+        }
+        history.save();
+
+        history = new ResolutionHistory(file, 5, 50, 100);
+        history.load();
+        List<String> regressions = history.check(entries(1600, 100), false);
+        assertEquals(1, regressions.size());
+        assertTrue(regressions.get(0).startsWith("resolution time of a/1.0 (default) grew"));
+        regressions = history.check(entries(1000, 151), false);
+        assertEquals(1, regressions.size());
+        assertTrue(regressions.get(0).startsWith("number of resources of a/1.0 (default) grew"));
+        // regressions were not recorded
+        assertTrue(history.check(entries(1400, 140), false).isEmpty());
+    }
+
+    @Test
+    public void testShortResolutionsIgnored() throws Exception {
+        ResolutionHistory history = new ResolutionHistory(new File(tmp.getRoot(), "history"), 5, 50, 100);
+        assertTrue(history.check(entries(10, 100), true).isEmpty());
+        assertTrue(history.check(entries(90, 100), true).isEmpty());
+    }
+
+    private static List<VerificationReport.Entry> entries(long time, int resources) {
+        VerificationReport.Entry entry = new VerificationReport.Entry("a/1.0", "feature");
+        entry.setTarget("default");
+        entry.setOutcome(VerificationReport.SUCCESS);
+        entry.addResolverTime(time);
+        entry.setResources(resources);
+        return Collections.singletonList(entry);
+    }
+
+}
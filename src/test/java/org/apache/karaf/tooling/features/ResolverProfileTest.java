@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.tooling.features;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.felix.resolver.ResolverImpl;
+import org.apache.karaf.features.internal.resolver.ResourceBuilder;
+import org.apache.karaf.tooling.verify.ResolverProfile;
+import org.apache.karaf.tooling.verify.TimingResolver;
+import org.apache.karaf.tooling.verify.VerificationReport;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Test;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.namespace.PackageNamespace;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Namespace;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+import org.osgi.resource.Wire;
+import org.osgi.resource.Wiring;
+import org.osgi.service.resolver.HostedCapability;
+import org.osgi.service.resolver.ResolveContext;
+import org.osgi.service.resolver.Resolver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ResolverProfileTest {
+
+    /**
+     * The consumer first gets package p from the provider with the highest version, which conflicts with the
+     * package p used by package q, so that the resolver has to try another permutation.
+     */
+    @Test
+    public void testUsesConstraintViolation() throws Exception {
+        List<Resource> resources = new ArrayList<>();
+        resources.add(resource("p.v2", "Export-Package", "p;version=2"));
+        resources.add(resource("p.v1", "Export-Package", "p;version=1"));
+        resources.add(resource("q", "Export-Package", "q;uses:=p", "Import-Package", "p;version=\"[1,2)\""));
+        Resource consumer = resource("consumer", "Import-Package", "p,q");
+        resources.add(consumer);
+
+        ResolverProfile profile = new ResolverProfile();
+        ResolverProfile.Stats stats = profile.start("consumer");
+        Log log = new SystemStreamLog();
+        Resolver resolver = profile.wrap(stats, new TimingResolver(
+                new ResolverImpl(profile.createLogger(stats, log)), new VerificationReport.Entry("consumer", "feature")));
+        Map<Resource, List<Wire>> wiring = resolver.resolve(new Context(resources, consumer));
+
+        for (Wire wire : wiring.get(consumer)) {
+            if (PackageNamespace.PACKAGE_NAMESPACE.equals(wire.getCapability().getNamespace())
+                    && "p".equals(wire.getCapability().getAttributes().get(PackageNamespace.PACKAGE_NAMESPACE))) {
+                assertEquals(resources.get(1), wire.getProvider());
+            }
+        }
+        assertEquals(1, stats.getResolutions());
+        assertTrue(stats.getCandidateLists() > 0);
+        assertTrue(stats.getAmbiguousCandidateLists() > 0);
+        // Fails if the Felix resolver debug messages are not recognized anymore
+        assertTrue(stats.getBacktracks() > 0);
+        assertTrue(stats.getUsesViolations() > 0);
+        assertEquals("p", profile.getPackages().get(0).getName());
+        assertTrue(profile.getPackages().get(0).getUsesViolations() > 0);
+    }
+
+    private static Resource resource(String name, String... headers) throws Exception {
+        Map<String, String> map = new HashMap<>();
+        map.put("Bundle-ManifestVersion", "2");
+        map.put("Bundle-SymbolicName", name);
+        map.put("Bundle-Version", "1.0.0");
+        for (int i = 0; i < headers.length; i += 2) {
+            map.put(headers[i], headers[i + 1]);
+        }
+        return ResourceBuilder.build("mvn:test/" + name + "/1.0.0", map);
+    }
+
+    private static class Context extends ResolveContext {
+        private final List<Resource> resources;
+        private final Resource mandatory;
+
+        Context(List<Resource> resources, Resource mandatory) {
+            this.resources = resources;
+            this.mandatory = mandatory;
+        }
+
+        @Override
+        public Collection<Resource> getMandatoryResources() {
+            return Collections.singleton(mandatory);
+        }
+
+        @Override
+        public List<Capability> findProviders(Requirement requirement) {
+            List<Capability> providers = new ArrayList<>();
+            try {
+                String filter = requirement.getDirectives().get(Namespace.REQUIREMENT_FILTER_DIRECTIVE);
+                for (Resource resource : resources) {
+                    for (Capability capability : resource.getCapabilities(requirement.getNamespace())) {
+                        if (filter == null || FrameworkUtil.createFilter(filter).matches(capability.getAttributes())) {
+                            providers.add(capability);
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            return providers;
+        }
+
+        @Override
+        public int insertHostedCapability(List<Capability> capabilities, HostedCapability hostedCapability) {
+            capabilities.add(hostedCapability);
+            return capabilities.size() - 1;
+        }
+
+        @Override
+        public boolean isEffective(Requirement requirement) {
+            return true;
+        }
+
+        @Override
+        public Map<Resource, Wiring> getWirings() {
+            return Collections.emptyMap();
+        }
+    }
+}
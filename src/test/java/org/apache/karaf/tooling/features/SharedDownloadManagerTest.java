@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.tooling.features;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.karaf.features.internal.download.DownloadCallback;
+import org.apache.karaf.features.internal.download.Downloader;
+import org.apache.karaf.features.internal.download.StreamProvider;
+import org.apache.karaf.tooling.utils.DependencyHelper;
+import org.apache.karaf.tooling.verify.SharedDownloadManager;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.ops4j.pax.url.mvn.MavenResolver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class SharedDownloadManagerTest {
+
+    private static final String URL = "mvn:org.foo/bar/1.0";
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testFailedDownloadIsRetried() throws Exception {
+        final File file = tmp.newFile("bar-1.0.jar");
+        final AtomicInteger attempts = new AtomicInteger();
+        // the first resolution fails, the following ones succeed
+        MavenResolver resolver = (MavenResolver) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[] { MavenResolver.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (method.getName().equals("resolve") && args != null && args.length == 1) {
+                            if (attempts.incrementAndGet() == 1) {
+                                throw new IOException("Transient error");
+                            }
+                            return file;
+                        }
+                        return null;
+                    }
+                });
+        ScheduledExecutorService executor = Executors.newScheduledThreadPool(2);
+        try {
+            SharedDownloadManager manager = new SharedDownloadManager(resolver, executor);
+            try {
+                download(manager);
+                fail("The first download should fail");
+            } catch (Exception e) {
+                // expected
+            }
+            assertEquals(file, download(manager.fork()));
+            assertEquals(file, download(manager.fork()));
+            assertEquals(2, attempts.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSessionIsTriedFirst() throws Exception {
+        File sessionFile = tmp.newFile("session-bar-1.0.jar");
+        File paxFile = tmp.newFile("pax-bar-1.0.jar");
+        AtomicInteger sessionAttempts = new AtomicInteger();
+        AtomicInteger paxAttempts = new AtomicInteger();
+        ScheduledExecutorService executor = Executors.newScheduledThreadPool(2);
+        try {
+            SharedDownloadManager manager = new SharedDownloadManager(resolver(paxFile, paxAttempts), executor,
+                    helper(sessionFile, sessionAttempts), new SystemStreamLog());
+            assertEquals(sessionFile, download(manager));
+            assertEquals(1, sessionAttempts.get());
+            assertEquals(0, paxAttempts.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFallbackToPaxUrl() throws Exception {
+        File paxFile = tmp.newFile("pax-bar-1.0.jar");
+        AtomicInteger sessionAttempts = new AtomicInteger();
+        AtomicInteger paxAttempts = new AtomicInteger();
+        ScheduledExecutorService executor = Executors.newScheduledThreadPool(2);
+        try {
+            // the session can not resolve the artifact
+            SharedDownloadManager manager = new SharedDownloadManager(resolver(paxFile, paxAttempts), executor,
+                    helper(null, sessionAttempts), new SystemStreamLog());
+            assertEquals(paxFile, download(manager));
+            assertEquals(1, sessionAttempts.get());
+            assertEquals(1, paxAttempts.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private MavenResolver resolver(final File file, final AtomicInteger attempts) {
+        return (MavenResolver) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[] { MavenResolver.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (method.getName().equals("resolve") && args != null && args.length == 1) {
+                            attempts.incrementAndGet();
+                            return file;
+                        }
+                        return null;
+                    }
+                });
+    }
+
+    private DependencyHelper helper(final File file, final AtomicInteger attempts) {
+        return (DependencyHelper) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[] { DependencyHelper.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (method.getName().equals("resolveIfAvailable")) {
+                            assertEquals(URL, args[0]);
+                            attempts.incrementAndGet();
+                            return file;
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static File download(SharedDownloadManager manager) throws Exception {
+        final AtomicReference<File> result = new AtomicReference<>();
+        Downloader downloader = manager.createDownloader();
+        downloader.download(URL, new DownloadCallback() {
+            @Override
+            public void downloaded(StreamProvider provider) throws Exception {
+                result.set(provider.getFile());
+            }
+        });
+        downloader.await();
+        return result.get();
+    }
+
+}
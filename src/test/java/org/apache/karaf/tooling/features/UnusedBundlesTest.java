@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.tooling.features;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.karaf.features.internal.model.Conditional;
+import org.apache.karaf.features.internal.model.Feature;
+import org.apache.karaf.features.internal.model.Features;
+import org.apache.karaf.tooling.VerifyMojo;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Constants;
+import org.osgi.framework.namespace.HostNamespace;
+import org.osgi.framework.namespace.PackageNamespace;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+import org.osgi.resource.Wire;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class UnusedBundlesTest {
+
+    @Test
+    public void testUnusedBundles() throws Exception {
+        VerifyMojo.FakeBundleRevision system = revision("system.bundle", 0, Constants.EXPORT_PACKAGE, "org.osgi.framework");
+        VerifyMojo.FakeBundleRevision a = revision("a", 1, Constants.EXPORT_PACKAGE, "a", Constants.IMPORT_PACKAGE, "org.osgi.framework");
+        VerifyMojo.FakeBundleRevision b = revision("b", 2, Constants.IMPORT_PACKAGE, "a");
+        VerifyMojo.FakeBundleRevision fragment = revision("fragment", 3, Constants.FRAGMENT_HOST, "a");
+
+        Map<Resource, List<Wire>> wiring = new HashMap<>();
+        wiring.put(system, Collections.<Wire>emptyList());
+        wiring.put(a, Arrays.asList(wire(a, system, PackageNamespace.PACKAGE_NAMESPACE)));
+        wiring.put(b, Arrays.asList(wire(b, a, PackageNamespace.PACKAGE_NAMESPACE)));
+        wiring.put(fragment, Arrays.asList(wire(fragment, a, HostNamespace.HOST_NAMESPACE)));
+
+        // the system bundle and the fragment are never reported
+        assertEquals(Collections.singleton(b.getBundle().getLocation()), getUnused(wiring, system, a, b, fragment));
+    }
+
+    @Test
+    public void testBundleUsedByConditional() throws Exception {
+        VerifyMojo.FakeBundleRevision system = revision("system.bundle", 0);
+        VerifyMojo.FakeBundleRevision a = revision("a", 1, Constants.EXPORT_PACKAGE, "a");
+        VerifyMojo.FakeBundleRevision b = revision("b", 2, Constants.IMPORT_PACKAGE, "a", Constants.EXPORT_PACKAGE, "b");
+        VerifyMojo.FakeBundleRevision conditional = revision("conditional", 3, Constants.IMPORT_PACKAGE, "b");
+
+        Map<Resource, List<Wire>> wiring = new HashMap<>();
+        wiring.put(a, Collections.<Wire>emptyList());
+        wiring.put(b, Arrays.asList(wire(b, a, PackageNamespace.PACKAGE_NAMESPACE)));
+        assertEquals(Collections.singleton(b.getBundle().getLocation()), getUnused(wiring, system, a, b));
+
+        // b is used once the conditional is installed
+        wiring.put(conditional, Arrays.asList(wire(conditional, b, PackageNamespace.PACKAGE_NAMESPACE)));
+        assertEquals(Collections.singleton(conditional.getBundle().getLocation()), getUnused(wiring, system, a, b, conditional));
+    }
+
+    @Test
+    public void testPrune() throws Exception {
+        Feature feature = new Feature("test", "1.0.0");
+        feature.getBundle().add(new org.apache.karaf.features.internal.model.Bundle("mvn:test/a/1.0.0"));
+        feature.getBundle().add(new org.apache.karaf.features.internal.model.Bundle("mvn:test/b/1.0.0"));
+        Conditional conditional = new Conditional();
+        conditional.getCondition().add("other");
+        conditional.getBundle().add(new org.apache.karaf.features.internal.model.Bundle("mvn:test/c/1.0.0"));
+        feature.getConditional().add(conditional);
+        Feature notVerified = new Feature("not-verified", "1.0.0");
+
+        Map<String, Set<String>> unused = new HashMap<>();
+        unused.put(feature.getId(), new HashSet<>(Arrays.asList("mvn:test/b/1.0.0", "mvn:test/c/1.0.0")));
+        Features pruned = VerifyMojo.prune(Arrays.asList(feature, notVerified), unused, "test-pruned");
+
+        assertEquals("test-pruned", pruned.getName());
+        assertEquals(1, pruned.getFeature().size());
+        Feature copy = pruned.getFeature().get(0);
+        assertEquals(feature.getId(), copy.getId());
+        assertEquals(1, copy.getBundle().size());
+        assertEquals("mvn:test/a/1.0.0", copy.getBundle().get(0).getLocation());
+        // conditional bundles are kept
+        assertEquals(1, copy.getConditional().get(0).getBundle().size());
+        // the verified features are left untouched
+        assertEquals(2, feature.getBundle().size());
+    }
+
+    private static Set<String> getUnused(Map<Resource, List<Wire>> wiring, VerifyMojo.FakeBundleRevision system,
+                                         VerifyMojo.FakeBundleRevision... revisions) throws Exception {
+        VerifyMojo.DummyDeployCallback callback = new VerifyMojo.DummyDeployCallback(system.getBundle(), Collections.<Features>emptyList());
+        Map<Resource, Bundle> resToBnd = new HashMap<>();
+        Set<Bundle> bundles = new HashSet<>();
+        for (VerifyMojo.FakeBundleRevision revision : revisions) {
+            resToBnd.put(revision, revision.getBundle());
+            bundles.add(revision.getBundle());
+        }
+        callback.resolveBundles(bundles, wiring, resToBnd);
+        Set<String> unused = callback.getUnusedBundleLocations();
+        assertFalse(unused.contains(system.getBundle().getLocation()));
+        return unused;
+    }
+
+    private static VerifyMojo.FakeBundleRevision revision(String name, long id, String... headers) throws Exception {
+        Hashtable<String, String> map = new Hashtable<>();
+        map.put(Constants.BUNDLE_MANIFESTVERSION, "2");
+        map.put(Constants.BUNDLE_SYMBOLICNAME, name);
+        map.put(Constants.BUNDLE_VERSION, "1.0.0");
+        for (int i = 0; i < headers.length; i += 2) {
+            map.put(headers[i], headers[i + 1]);
+        }
+        return new VerifyMojo.FakeBundleRevision(map, "mvn:test/" + name + "/1.0.0", id);
+    }
+
+    private static Wire wire(final Resource requirer, final Resource provider, final String namespace) {
+        return new Wire() {
+            @Override
+            public Capability getCapability() {
+                List<Capability> capabilities = provider.getCapabilities(namespace);
+                return capabilities.isEmpty() ? null : capabilities.get(0);
+            }
+
+            @Override
+            public Requirement getRequirement() {
+                return requirer.getRequirements(namespace).get(0);
+            }
+
+            @Override
+            public Resource getProvider() {
+                return provider;
+            }
+
+            @Override
+            public Resource getRequirer() {
+                return requirer;
+            }
+        };
+    }
+}
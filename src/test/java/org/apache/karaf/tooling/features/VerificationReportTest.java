@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.tooling.features;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.apache.karaf.tooling.verify.VerificationReport;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertTrue;
+
+public class VerificationReportTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testJsonAndXml() throws Exception {
+        VerificationReport.Entry success = new VerificationReport.Entry("a/1.0.0", "feature");
+        success.setOutcome(VerificationReport.SUCCESS);
+        success.setWallTime(120);
+        success.addResolverTime(40);
+        success.addResolverTime(2);
+        success.addDownloadTime(30);
+        success.setResources(12);
+        success.setBundles(5);
+        VerificationReport.Entry failure = new VerificationReport.Entry("[b/1.0.0, c]", "conditional");
+        failure.setOutcome(VerificationReport.FAILURE);
+        failure.setMessage("Feature resolution failed for \"b\"\nMessage: <missing>");
+
+        VerificationReport report = new VerificationReport();
+        report.addAll(Arrays.asList(success, failure));
+
+        File json = new File(tmp.getRoot(), "report/verify.json");
+        report.write(json, "json");
+        String content = new String(Files.readAllBytes(json.toPath()), StandardCharsets.UTF_8);
+        assertTrue(content.contains("{\"id\": \"a/1.0.0\", \"type\": \"feature\", \"outcome\": \"success\", \"wallTime\": 120, "
+                + "\"resolverTime\": 42, \"downloadTime\": 30, \"resources\": 12, \"bundles\": 5},"));
+        assertTrue(content.contains("\"message\": \"Feature resolution failed for \\\"b\\\"\\nMessage: <missing>\"}"));
+
+        File xml = new File(tmp.getRoot(), "verify.xml");
+        report.write(xml, "xml");
+        content = new String(Files.readAllBytes(xml.toPath()), StandardCharsets.UTF_8);
+        assertTrue(content.contains("<entry id=\"[b/1.0.0, c]\" type=\"conditional\" outcome=\"failure\""));
+        assertTrue(content.contains("<message>Feature resolution failed for &quot;b&quot;\nMessage: &lt;missing&gt;</message>"));
+    }
+
+}